@@ -0,0 +1,63 @@
+package com.wn.tiny.ledger.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a {@link Transaction}, and of the parts of it: the id, generated by {@link SnowflakeIdGenerator},
+ * compared with the random UUID with its dashes removed by {@link String#replaceAll} it replaced, and the timestamp.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionBenchmark {
+
+    private final Money amount = Money.ofMinor(12_345);
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @Benchmark
+    public Transaction newTransaction() {
+        return new Transaction(idGenerator, amount, TransactionType.DEPOSIT);
+    }
+
+    @Benchmark
+    public String id_snowflake() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String id_snowflake_4Threads() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    public String id_uuidReplaceAll() {
+        return UUID.randomUUID().toString().replaceAll("-", "");
+    }
+
+    @Benchmark
+    public String id_uuidOnly() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public LocalDateTime timestamp() {
+        return LocalDateTime.now();
+    }
+}
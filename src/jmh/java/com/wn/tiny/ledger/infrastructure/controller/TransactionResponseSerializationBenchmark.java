@@ -0,0 +1,79 @@
+package com.wn.tiny.ledger.infrastructure.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.controller.dto.TransactionResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the history pages returned by the API in each of the formats clients can ask for, with the
+ * object mappers configured the way Spring configures them for the controllers. Includes the mapping from
+ * {@link Transaction} to {@link TransactionResponse}. The size of a page in each format is printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionResponseSerializationBenchmark {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @Param({"1", "100", "1000", "10000"})
+    public int pageSize;
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    private List<Transaction> transactions;
+    private ObjectWriter writer;
+
+    @Setup
+    public void prepare() {
+        transactions = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            transactions.add(new Transaction(idGenerator, Money.ofMinor(1_000 + i),
+                    i % 2 == 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL));
+        }
+        final var builder = switch (format) {
+            case "json" -> Jackson2ObjectMapperBuilder.json();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile();
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        writer = builder.build()
+                .writerFor(new TypeReference<List<TransactionResponse>>() {
+                });
+    }
+
+    @TearDown
+    public void printSize() throws Exception {
+        System.out.printf("%n%s page of %d transactions: %d bytes%n", format, pageSize, serializePage().length);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws Exception {
+        return writer.writeValueAsBytes(transactions.stream().map(TransactionResponse::from).toList());
+    }
+}
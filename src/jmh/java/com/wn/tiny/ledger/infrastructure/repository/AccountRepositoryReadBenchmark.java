@@ -0,0 +1,117 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the reads of {@link AccountRepository} on an account holding 10^3 to 10^7 transactions, with each
+ * {@link StorageEngine}: lookups by id, a page of the history at a random position, a scan of the whole history and
+ * the balance at a random point in time.
+ * <p>
+ * The history is loaded through {@link AccountRepository#restore(long, String, List)}, the way recovery loads it, with
+ * transactions sharing their amount, and their timestamp by runs of {@value #PER_TIMESTAMP}, so 10^7 of them fit in
+ * the heap of the fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class AccountRepositoryReadBenchmark {
+
+    private static final String ACCOUNT = "account-1";
+    private static final int PAGE_SIZE = 100;
+    private static final int LOAD_BATCH = 64 * 1024;
+    private static final int PER_TIMESTAMP = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int historySize;
+
+    @Param({"OBJECTS", "COLUMNAR"})
+    public StorageEngine storageEngine;
+
+    private AccountRepository repository;
+    private String[] ids;
+    private String unknownId;
+    private LocalDateTime start;
+
+    @Setup
+    public void load() {
+        repository = new AccountRepository(TransactionJournal.NONE, storageEngine);
+        ids = new String[historySize];
+        final var idGenerator = new SnowflakeIdGenerator(0);
+
+        final var amount = Money.ofMinor(100);
+        start = LocalDateTime.now();
+        var timestamp = start;
+        final List<Transaction> batch = new ArrayList<>(LOAD_BATCH);
+        for (int i = 0; i < historySize; i++) {
+            ids[i] = idGenerator.nextId();
+            if (i % PER_TIMESTAMP == 0) {
+                timestamp = start.plusSeconds(i / PER_TIMESTAMP);
+            }
+            batch.add(new Transaction(ids[i], amount, TransactionType.DEPOSIT, timestamp));
+            if (batch.size() == LOAD_BATCH || i == historySize - 1) {
+                repository.restore(i + 1, ACCOUNT, batch);
+                batch.clear();
+            }
+        }
+        unknownId = idGenerator.nextId();
+    }
+
+    @Benchmark
+    public Optional<Transaction> findTransaction() {
+        return repository.findTransaction(ACCOUNT, ids[ThreadLocalRandom.current().nextInt(historySize)]);
+    }
+
+    @Benchmark
+    public Optional<Transaction> findTransaction_unknown() {
+        return repository.findTransaction(ACCOUNT, unknownId);
+    }
+
+    @Benchmark
+    public void getTransactionHistory_page(Blackhole blackhole) {
+        final int from = ThreadLocalRandom.current().nextInt(Math.max(1, historySize - PAGE_SIZE));
+        for (var transaction : repository.getTransactionHistory(ACCOUNT, from, PAGE_SIZE)) {
+            blackhole.consume(transaction);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long getTransactionHistory_scan() {
+        long balance = 0;
+        for (var transaction : repository.getTransactionHistory(ACCOUNT)) {
+            balance += transaction.getBalanceDelta();
+        }
+        return balance;
+    }
+
+    @Benchmark
+    public Money getBalance_asOf() {
+        final int seconds = ThreadLocalRandom.current().nextInt(Math.max(1, historySize / PER_TIMESTAMP));
+        return repository.getBalance(ACCOUNT, start.plusSeconds(seconds));
+    }
+}
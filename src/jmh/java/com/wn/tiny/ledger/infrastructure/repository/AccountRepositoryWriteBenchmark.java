@@ -0,0 +1,99 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+/**
+ * Throughput of {@link AccountRepository#addTransaction} with 1 to 64 writer threads, all on one account (every write
+ * contends on the same balance and log) or spread over 64 accounts. The transactions are built beforehand so only the
+ * repository is measured.
+ * <p>
+ * The repository is emptied before every iteration, iterations are kept short so the in-memory history stays small.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class AccountRepositoryWriteBenchmark {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final LongPredicate ANY_BALANCE = balance -> true;
+    private static final int PREPARED_TRANSACTIONS = 1024;
+
+    @Param({"1", "64"})
+    public int accounts;
+
+    private AccountRepository repository;
+    private String[] accountIds;
+    private Transaction[] transactions;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        accountIds = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountIds[i] = "account-" + i;
+        }
+        // the same transactions are appended again and again, only their ids are indexed twice
+        transactions = new Transaction[PREPARED_TRANSACTIONS];
+        for (int i = 0; i < transactions.length; i++) {
+            transactions[i] = new Transaction(idGenerator, Money.ofMinor(100 + i), TransactionType.DEPOSIT);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyRepository() {
+        repository = new AccountRepository();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addTransaction_1Thread() {
+        addTransaction();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addTransaction_4Threads() {
+        addTransaction();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void addTransaction_16Threads() {
+        addTransaction();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void addTransaction_64Threads() {
+        addTransaction();
+    }
+
+    private void addTransaction() {
+        final var random = ThreadLocalRandom.current();
+        repository.addTransaction(accountIds[random.nextInt(accounts)],
+                transactions[random.nextInt(PREPARED_TRANSACTIONS)], ANY_BALANCE);
+    }
+}
@@ -0,0 +1,11 @@
+package com.wn.tiny.ledger.application;
+
+/**
+ * Thrown when the change feed already serves as many subscribers as it may, the client should retry later.
+ */
+public class FeedUnavailableException extends RuntimeException {
+
+    public FeedUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,41 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.InvalidTransactionException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque history cursor. It wraps the sequence number of the next transaction to read, so a page stays stable no
+ * matter how many transactions are recorded in the meantime.
+ */
+final class HistoryCursor {
+
+    private static final String PREFIX = "seq:";
+
+    private HistoryCursor() {
+    }
+
+    static String encode(long sequence) {
+        var raw = PREFIX + sequence;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            var raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (raw.startsWith(PREFIX)) {
+                long sequence = Long.parseLong(raw.substring(PREFIX.length()));
+                if (sequence >= 0) {
+                    return sequence;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // falls through to the exception below, NumberFormatException included
+        }
+        throw new InvalidTransactionException("Invalid history cursor");
+    }
+}
@@ -0,0 +1,151 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the transaction recorded for each idempotency key, so a retried request gets the transaction of its first
+ * attempt instead of recording a new one.
+ * <p>
+ * A key is registered before its transaction is recorded: concurrent requests with the same key wait for the first one
+ * and share its outcome. Keys are scoped to an account and are forgotten once their time to live has passed, or
+ * earliest first when more than the maximum number of keys are held. Every key holds one transaction, so the maximum
+ * number of keys bounds the memory used. A key whose transaction is still being recorded is never forgotten, so its
+ * retries always wait for it; the cache holds more keys than the maximum while too many are. A failed attempt is not
+ * remembered, its retry records the transaction again.
+ */
+public class IdempotencyCache {
+
+    public static final int DEFAULT_MAX_KEYS = 100_000;
+    public static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+    private final int maxKeys;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    /* Every key lives for the same time, so insertion order is also expiry order. Guarded by itself */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>();
+
+    public IdempotencyCache(int maxKeys, Duration ttl) {
+        this(maxKeys, ttl, System::nanoTime);
+    }
+
+    IdempotencyCache(int maxKeys, Duration ttl, LongSupplier nanoClock) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Maximum number of idempotency keys must be positive");
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Idempotency key time to live must be positive");
+        }
+        this.maxKeys = maxKeys;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Runs {@code record} unless the key was already used on the account, in which case the transaction of the first
+     * use is returned, after waiting for it when it is still being recorded.
+     *
+     * @param request what the transaction records, a key used again for a different request is rejected
+     */
+    public Transaction execute(String accountId, String idempotencyKey, NewTransaction request,
+                               Supplier<Transaction> record) {
+        final var key = new Key(accountId, idempotencyKey);
+        final Entry entry;
+        final boolean firstAttempt;
+        synchronized (entries) {
+            final long now = nanoClock.getAsLong();
+            evictExpired(now);
+
+            final var existing = entries.get(key);
+            firstAttempt = existing == null;
+            if (firstAttempt) {
+                entry = new Entry(request, now + ttlNanos, new CompletableFuture<>());
+                entries.put(key, entry);
+                while (entries.size() > maxKeys && evictEldestRecorded()) {
+                    // only keys whose transaction is recorded make room
+                }
+            } else {
+                entry = existing;
+            }
+        }
+
+        if (!firstAttempt) {
+            if (!entry.request().equals(request)) {
+                throw new InvalidTransactionException("Idempotency key was already used for a different transaction");
+            }
+            return await(entry);
+        }
+
+        try {
+            final var transaction = record.get();
+            entry.result().complete(transaction);
+            return transaction;
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of keys remembered, expired ones included until they are evicted
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evictExpired(long now) {
+        final var iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            if (entry.expiresAt() - now > 0) {
+                return;
+            }
+            if (entry.result().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return whether a key was evicted, {@code false} when every key is still being recorded
+     */
+    private boolean evictEldestRecorded() {
+        final var iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().result().isDone()) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Transaction await(Entry entry) {
+        try {
+            return entry.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Key(String accountId, String idempotencyKey) {
+    }
+
+    private record Entry(NewTransaction request, long expiresAt, CompletableFuture<Transaction> result) {
+    }
+}
@@ -0,0 +1,59 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.TransactionType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the ledger operations. They are registered up front so that recording a transaction only updates them.
+ */
+class LedgerMetrics {
+
+    static final String RECORD_TIMER = "ledger.transactions.record";
+    static final String REJECTED_WITHDRAWALS = "ledger.withdrawals.rejected";
+
+    enum Outcome {
+        /* The transaction was recorded, or an earlier attempt with the same idempotency key had recorded it */
+        RECORDED,
+        /* The transaction was invalid, for example a withdrawal without enough funds */
+        REJECTED,
+        FAILED
+    }
+
+    private final Map<TransactionType, Map<Outcome, Timer>> recordTimers = new EnumMap<>(TransactionType.class);
+    private final Counter rejectedWithdrawals;
+
+    LedgerMetrics(MeterRegistry registry) {
+        for (var type : TransactionType.values()) {
+            final Map<Outcome, Timer> timers = new EnumMap<>(Outcome.class);
+            for (var outcome : Outcome.values()) {
+                timers.put(outcome, Timer.builder(RECORD_TIMER)
+                        .description("Time taken to record a single transaction, durability included")
+                        .tag("type", type.name())
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .publishPercentileHistogram()
+                        .register(registry));
+            }
+            recordTimers.put(type, timers);
+        }
+        this.rejectedWithdrawals = Counter.builder(REJECTED_WITHDRAWALS)
+                .description("Withdrawals rejected because the balance was too low, batches included")
+                .register(registry);
+    }
+
+    void recordTime(TransactionType type, Outcome outcome, long startNanos) {
+        // a transaction without a type is rejected before it gets anywhere, there is no timer to record it in
+        if (type != null) {
+            recordTimers.get(type).get(outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void withdrawalRejected() {
+        rejectedWithdrawals.increment();
+    }
+}
@@ -1,44 +1,301 @@
 package com.wn.tiny.ledger.application;
 
+import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.RollupPeriod;
 import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionIdGenerator;
+import com.wn.tiny.ledger.domain.TransactionNotFoundException;
 import com.wn.tiny.ledger.domain.TransactionPersistence;
+import com.wn.tiny.ledger.domain.TransactionRollup;
 import com.wn.tiny.ledger.domain.TransactionType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.util.function.Predicate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.LongPredicate;
 
 @Service
 public class LedgerService {
 
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private final TransactionPersistence transactionPersistence;
+    private final IdempotencyCache idempotencyCache;
+    private final LedgerMetrics metrics;
+    private final TransactionFeed transactionFeed;
+    private final TransactionIdGenerator idGenerator;
+
+    public LedgerService(TransactionPersistence transactionPersistence, TransactionIdGenerator idGenerator) {
+        this(transactionPersistence, new IdempotencyCache(IdempotencyCache.DEFAULT_MAX_KEYS, IdempotencyCache.DEFAULT_TTL),
+                new SimpleMeterRegistry(), idGenerator);
+    }
+
+    @Autowired
+    public LedgerService(TransactionPersistence transactionPersistence,
+                         @Value("${ledger.idempotency.max-keys:100000}") int maxIdempotencyKeys,
+                         @Value("${ledger.idempotency.ttl:24h}") Duration idempotencyKeyTtl,
+                         @Value("${ledger.feed.max-lag:10000}") int maxFeedLag,
+                         @Value("${ledger.feed.heartbeat:15s}") Duration feedHeartbeat,
+                         @Value("${ledger.feed.max-subscribers:1000}") int maxFeedSubscribers,
+                         @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                         MeterRegistry meterRegistry,
+                         TransactionIdGenerator idGenerator) {
+        this(transactionPersistence, new IdempotencyCache(maxIdempotencyKeys, idempotencyKeyTtl), meterRegistry,
+                new TransactionFeed(transactionPersistence, maxFeedLag, feedHeartbeat, maxFeedSubscribers,
+                        feedExecutor(virtualThreads)), idGenerator);
+    }
+
+    /**
+     * Subscribers spend their life parked, on virtual threads they cost no platform thread; those are only available
+     * from Java 21 on, older runtimes keep a daemon platform thread per subscriber.
+     */
+    private static SimpleAsyncTaskExecutor feedExecutor(boolean virtualThreads) {
+        final var executor = new SimpleAsyncTaskExecutor("ledger-feed-");
+        executor.setDaemon(true);
+        executor.setVirtualThreads(virtualThreads && Runtime.version().feature() >= 21);
+        return executor;
+    }
 
-    public LedgerService(TransactionPersistence transactionPersistence) {
+    LedgerService(TransactionPersistence transactionPersistence, IdempotencyCache idempotencyCache,
+                  MeterRegistry meterRegistry, TransactionIdGenerator idGenerator) {
+        this(transactionPersistence, idempotencyCache, meterRegistry, new TransactionFeed(transactionPersistence,
+                TransactionFeed.DEFAULT_MAX_LAG, TransactionFeed.DEFAULT_HEARTBEAT), idGenerator);
+    }
+
+    LedgerService(TransactionPersistence transactionPersistence, IdempotencyCache idempotencyCache,
+                  MeterRegistry meterRegistry, TransactionFeed transactionFeed, TransactionIdGenerator idGenerator) {
         this.transactionPersistence = transactionPersistence;
+        this.idempotencyCache = idempotencyCache;
+        this.metrics = new LedgerMetrics(meterRegistry);
+        this.transactionFeed = transactionFeed;
+        this.idGenerator = idGenerator;
+    }
+
+    public Money getBalance(String accountId) {
+        return transactionPersistence.getBalance(accountId);
     }
 
-    public BigDecimal getBalance() {
-        return transactionPersistence.getBalance();
+    /**
+     * Returns the balance of the account as it was at {@code asOf}, or the current balance when it is {@code null}.
+     */
+    public Money getBalance(String accountId, LocalDateTime asOf) {
+        return asOf == null ? getBalance(accountId) : transactionPersistence.getBalance(accountId, asOf);
     }
 
-    public List<Transaction> getTransactionHistory() {
-        return transactionPersistence.getTransactionHistory();
+    public List<Transaction> getTransactionHistory(String accountId) {
+        return transactionPersistence.getTransactionHistory(accountId);
     }
 
-    public Transaction recordTransaction(BigDecimal amount, TransactionType type) {
+    public TransactionPage getTransactionHistory(String accountId, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new InvalidTransactionException("Page limit must be positive");
+        }
+
+        final long fromSequence = HistoryCursor.decode(cursor);
 
-        final var transaction = new Transaction(amount, type);
+        // one extra entry tells whether there is a next page without reading the history size
+        var transactions = transactionPersistence.getTransactionHistory(accountId, fromSequence, limit + 1);
+        if (transactions.size() <= limit) {
+            return new TransactionPage(transactions, null);
+        }
+        return new TransactionPage(transactions.subList(0, limit), HistoryCursor.encode(fromSequence + limit));
+    }
+
+    /**
+     * Returns a page of the transactions recorded in {@code [from, to)}, either bound may be {@code null}. The cursor
+     * of the next page keeps the time range, it must be passed again with the same bounds.
+     */
+    public TransactionPage getTransactionHistory(String accountId, String cursor, int limit, LocalDateTime from,
+                                                 LocalDateTime to) {
+        if (from == null && to == null) {
+            return getTransactionHistory(accountId, cursor, limit);
+        }
+        if (limit <= 0) {
+            throw new InvalidTransactionException("Page limit must be positive");
+        }
+        validateTimeRange(from, to);
+
+        final long fromSequence = HistoryCursor.decode(cursor);
+
+        var slice = transactionPersistence.getTransactionHistory(accountId, from, to, fromSequence, limit);
+        return new TransactionPage(slice.transactions(),
+                slice.hasMore() ? HistoryCursor.encode(slice.nextSequence()) : null);
+    }
+
+    /**
+     * Returns the count, total, minimum and maximum of the transactions per type in every bucket of the period that
+     * overlaps {@code [from, to)}, either bound may be {@code null}.
+     */
+    public List<TransactionRollup> getStats(String accountId, RollupPeriod period, LocalDateTime from,
+                                            LocalDateTime to) {
+        if (period == null) {
+            throw new InvalidTransactionException("Rollup period must be specified");
+        }
+        validateTimeRange(from, to);
+        return transactionPersistence.getRollups(accountId, period, from, to);
+    }
+
+    /**
+     * Pushes the transactions recorded on the account to the listener as they are recorded, starting at
+     * {@code fromSequence}, or with the next transaction when it is {@code null}.
+     */
+    public TransactionFeed.Subscription subscribe(String accountId, Long fromSequence, TransactionFeed.Overflow overflow,
+                                                  TransactionFeed.Listener listener) {
+        if (fromSequence != null && fromSequence < 0) {
+            throw new InvalidTransactionException("Sequence must not be negative");
+        }
+        return transactionFeed.subscribe(accountId, fromSequence, overflow, listener);
+    }
+
+    /**
+     * Wakes the change feed subscribers of the account after transactions were recorded on it by another instance,
+     * such as the leader this instance replicates.
+     */
+    public void replicated(String accountId) {
+        transactionFeed.published(accountId);
+    }
+
+    @PreDestroy
+    public void close() {
+        transactionFeed.close();
+    }
+
+    public Transaction findTransaction(String accountId, String reference) {
+        return transactionPersistence.findTransaction(accountId, reference)
+                .orElseThrow(() -> new TransactionNotFoundException(reference));
+    }
+
+    public Transaction recordTransaction(String accountId, Money amount, TransactionType type) {
+        return recordTransaction(accountId, amount, type, null);
+    }
+
+    /**
+     * Records the transaction once per idempotency key: a retry with the same key returns the transaction recorded by
+     * the first attempt, waiting for it when it is still in progress. Without a key every call records a transaction.
+     */
+    public Transaction recordTransaction(String accountId, Money amount, TransactionType type, String idempotencyKey) {
+        final long start = System.nanoTime();
+        try {
+            final var transaction = recordOnce(accountId, amount, type, idempotencyKey);
+            metrics.recordTime(type, LedgerMetrics.Outcome.RECORDED, start);
+            return transaction;
+        } catch (InvalidTransactionException e) {
+            metrics.recordTime(type, LedgerMetrics.Outcome.REJECTED, start);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordTime(type, LedgerMetrics.Outcome.FAILED, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the transactions in order as a single all-or-nothing update of the balance. The batch is rejected as a
+     * whole when any of its transactions is invalid or when the balance would go negative at any point of it.
+     *
+     * @return the recorded transactions, in the order they were given
+     */
+    public List<Transaction> recordTransactions(String accountId, List<NewTransaction> newTransactions) {
+
+        if (accountId == null || accountId.isBlank()) {
+            throw new InvalidTransactionException("Account must be specified");
+        }
+        if (newTransactions == null || newTransactions.isEmpty()) {
+            throw new InvalidTransactionException("Batch must contain at least one transaction");
+        }
+
+        final List<Transaction> transactions = new ArrayList<>(newTransactions.size());
+        // balance change after each transaction, relative to the balance before the batch
+        final long[] runningDeltas = new long[newTransactions.size()];
+        long runningDelta = 0;
+        long lowestDelta = 0;
+        for (int i = 0; i < newTransactions.size(); i++) {
+            final var newTransaction = newTransactions.get(i);
+            final Transaction transaction;
+            try {
+                transaction = new Transaction(idGenerator, newTransaction.amount(), newTransaction.type());
+            } catch (InvalidTransactionException e) {
+                throw new InvalidTransactionException("Invalid transaction at index " + i + ": " + e.getMessage());
+            }
+            transactions.add(transaction);
+            runningDelta = Money.addExact(runningDelta, transaction.getBalanceDelta());
+            runningDeltas[i] = runningDelta;
+            lowestDelta = Math.min(lowestDelta, runningDelta);
+        }
+
+        final long lowest = lowestDelta;
+        LongPredicate validationBalance = (currentBalance) -> {
+            if (Money.addExact(currentBalance, lowest) >= 0) {
+                return true;
+            }
+            for (int i = 0; i < runningDeltas.length; i++) {
+                if (Money.addExact(currentBalance, runningDeltas[i]) < 0) {
+                    metrics.withdrawalRejected();
+                    throw new InvalidTransactionException("Insufficient funds for withdrawal at index " + i);
+                }
+            }
+            return false;
+        };
+
+        transactionPersistence.addTransactions(accountId, transactions, validationBalance);
+        transactionFeed.published(accountId);
+
+        return transactions;
+    }
+
+    private static void validateTimeRange(LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new InvalidTransactionException("Time range start must be before its end");
+        }
+    }
+
+    private Transaction recordOnce(String accountId, Money amount, TransactionType type, String idempotencyKey) {
+
+        if (accountId == null || accountId.isBlank()) {
+            throw new InvalidTransactionException("Account must be specified");
+        }
+        if (idempotencyKey == null) {
+            return record(accountId, amount, type);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new InvalidTransactionException("Idempotency key must have 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        return idempotencyCache.execute(accountId, idempotencyKey, new NewTransaction(amount, type),
+                () -> record(accountId, amount, type));
+    }
+
+    private Transaction record(String accountId, Money amount, TransactionType type) {
+        final var transaction = new Transaction(idGenerator, amount, type);
 
         // used to validate the balance on persistence moment where I have thread safe control
-        Predicate<BigDecimal> validationBalance = (currentBalance) -> {
+        final long amountMinorUnits = amount.minorUnits();
+        // outcome of the last validation, the one the write was decided on
+        final boolean[] insufficientFunds = {false};
+        LongPredicate validationBalance = (currentBalance) -> {
             if (type == TransactionType.WITHDRAWAL) {
-                return currentBalance.compareTo(amount) >= 0;
+                insufficientFunds[0] = currentBalance < amountMinorUnits;
+                return !insufficientFunds[0];
             }
             return true;
         };
 
-        transactionPersistence.addTransaction(transaction, validationBalance);
+        try {
+            transactionPersistence.addTransaction(accountId, transaction, validationBalance);
+        } catch (InvalidTransactionException e) {
+            if (insufficientFunds[0]) {
+                metrics.withdrawalRejected();
+            }
+            throw e;
+        }
+        transactionFeed.published(accountId);
 
         return transaction;
     }
@@ -0,0 +1,10 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.TransactionType;
+
+/**
+ * A transaction to record, as part of a batch or as the request behind an idempotency key.
+ */
+public record NewTransaction(Money amount, TransactionType type) {
+}
@@ -0,0 +1,289 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes the transactions recorded on an account to its subscribers, in history order, with the balance after each
+ * of them.
+ * <p>
+ * Subscribers read the history themselves, from the sequence number they resume at, each on its own thread taken from
+ * the executor of the feed, a virtual one when the application serves requests on virtual threads. At most
+ * {@code maxSubscribers} subscriptions run at once, further ones are refused until some end. The
+ * history is append-only, so it is the buffer every subscriber reads from and writers never copy anything for them.
+ * A writer only marks its account as changed and wakes a single dispatcher thread, which wakes the subscribers of the
+ * account: the cost of a write does not depend on the number of subscribers.
+ * <p>
+ * A subscriber may fall behind the history by at most {@code maxLag} transactions, which bounds what it holds on to.
+ * Further behind, it is either disconnected, telling where to resume, or skipped ahead to the end of the history,
+ * depending on its {@link Overflow} policy.
+ */
+public class TransactionFeed implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionFeed.class);
+
+    public static final int DEFAULT_MAX_LAG = 10_000;
+    public static final Duration DEFAULT_HEARTBEAT = Duration.ofSeconds(15);
+    public static final int DEFAULT_MAX_SUBSCRIBERS = 1_000;
+
+    /* Transactions read from the history at once by a subscriber */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * What happens to a subscriber that falls more than the maximum lag behind the history.
+     */
+    public enum Overflow {
+        /** The subscription ends, the subscriber can resume from the sequence it was told */
+        DISCONNECT,
+        /** The transactions in between are skipped and the subscription goes on from the end of the history */
+        SKIP
+    }
+
+    /**
+     * Receives the events of a subscription, always on the thread of the subscription. An exception thrown by a
+     * listener ends the subscription.
+     */
+    public interface Listener {
+
+        /**
+         * @param balance balance of the account after the transaction, in history order
+         */
+        void onTransaction(long sequence, Transaction transaction, Money balance) throws IOException;
+
+        /**
+         * The transactions from {@code fromSequence} (inclusive) to {@code toSequence} (exclusive) were skipped.
+         */
+        void onSkipped(long fromSequence, long toSequence) throws IOException;
+
+        /**
+         * The subscriber fell too far behind and is disconnected, it can resume at {@code nextSequence}.
+         */
+        void onOverflow(long nextSequence) throws IOException;
+
+        /**
+         * Nothing was recorded for a heartbeat interval, lets the listener check its connection.
+         */
+        void onIdle() throws IOException;
+
+        /**
+         * The subscription ended, whatever the reason.
+         */
+        void onClosed();
+    }
+
+    private final TransactionPersistence transactionPersistence;
+    private final int maxLag;
+    private final long heartbeatNanos;
+    private final int maxSubscribers;
+    /* Runs every subscription on a thread of its own until it ends */
+    private final Executor executor;
+    /* Subscriptions accepted and not ended yet, never more than the maximum */
+    private final AtomicInteger activeSubscriptions = new AtomicInteger();
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    /* Accounts written since the dispatcher last woke their subscribers */
+    private final Set<String> changedAccounts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberThreads = new AtomicInteger();
+    private volatile Thread dispatcher;
+    private volatile boolean closed;
+
+    public TransactionFeed(TransactionPersistence transactionPersistence, int maxLag, Duration heartbeat) {
+        this(transactionPersistence, maxLag, heartbeat, DEFAULT_MAX_SUBSCRIBERS, null);
+    }
+
+    /**
+     * @param executor runs each subscription on a thread of its own, {@code null} to start a platform thread for each
+     */
+    public TransactionFeed(TransactionPersistence transactionPersistence, int maxLag, Duration heartbeat,
+                           int maxSubscribers, Executor executor) {
+        if (maxLag <= 0) {
+            throw new IllegalArgumentException("Maximum subscriber lag must be positive");
+        }
+        if (heartbeat.isNegative() || heartbeat.isZero()) {
+            throw new IllegalArgumentException("Heartbeat interval must be positive");
+        }
+        if (maxSubscribers <= 0) {
+            throw new IllegalArgumentException("Maximum number of subscribers must be positive");
+        }
+        this.transactionPersistence = transactionPersistence;
+        this.maxLag = maxLag;
+        this.heartbeatNanos = heartbeat.toNanos();
+        this.maxSubscribers = maxSubscribers;
+        this.executor = executor != null ? executor : this::startThread;
+    }
+
+    /**
+     * Called after transactions were recorded on the account. Constant time, whatever the number of subscribers.
+     */
+    public void published(String accountId) {
+        if (subscriptions.containsKey(accountId) && changedAccounts.add(accountId)) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * Starts pushing the transactions of the account from {@code fromSequence} to the listener, or only the ones
+     * recorded from now on when it is {@code null}.
+     *
+     * @throws FeedUnavailableException when the feed already runs the maximum number of subscriptions
+     */
+    public Subscription subscribe(String accountId, Long fromSequence, Overflow overflow, Listener listener) {
+        if (closed) {
+            throw new IllegalStateException("Transaction feed is closed");
+        }
+        if (activeSubscriptions.incrementAndGet() > maxSubscribers) {
+            activeSubscriptions.decrementAndGet();
+            throw new FeedUnavailableException("Change feed already serves its " + maxSubscribers + " subscribers");
+        }
+        startDispatcher();
+
+        final var subscription = new Subscription(accountId, overflow, listener);
+        subscriptions.computeIfAbsent(accountId, id -> ConcurrentHashMap.newKeySet()).add(subscription);
+        // the start is read once registered, so no transaction recorded from then on can be missed
+        final long historySize = transactionPersistence.getHistorySize(accountId);
+        final long start = fromSequence == null ? historySize : Math.min(fromSequence, historySize);
+
+        try {
+            executor.execute(() -> subscription.run(start));
+        } catch (RejectedExecutionException e) {
+            unregister(subscription);
+            activeSubscriptions.decrementAndGet();
+            throw new FeedUnavailableException("Change feed cannot start a subscriber: " + e.getMessage());
+        }
+        return subscription;
+    }
+
+    int subscriberCount() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        subscriptions.values().forEach(set -> set.forEach(Subscription::close));
+        LockSupport.unpark(dispatcher);
+    }
+
+    private void startThread(Runnable task) {
+        final var thread = new Thread(task, "ledger-feed-" + subscriberThreads.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private synchronized void startDispatcher() {
+        if (dispatcher == null) {
+            final var thread = new Thread(this::dispatchLoop, "ledger-feed-dispatcher");
+            thread.setDaemon(true);
+            dispatcher = thread;
+            thread.start();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!closed) {
+            if (changedAccounts.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+            for (var iterator = changedAccounts.iterator(); iterator.hasNext(); ) {
+                final var accountId = iterator.next();
+                iterator.remove();
+                final var subscribers = subscriptions.get(accountId);
+                if (subscribers != null) {
+                    subscribers.forEach(Subscription::wake);
+                }
+            }
+        }
+    }
+
+    private void unregister(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.accountId, (id, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    public final class Subscription implements AutoCloseable {
+
+        private final String accountId;
+        private final Overflow overflow;
+        private final Listener listener;
+        private volatile Thread thread;
+        private volatile boolean closed;
+
+        private Subscription(String accountId, Overflow overflow, Listener listener) {
+            this.accountId = accountId;
+            this.overflow = overflow;
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            LockSupport.unpark(thread);
+        }
+
+        private void wake() {
+            LockSupport.unpark(thread);
+        }
+
+        private void run(long start) {
+            // a wake missed before this is harmless, the loop reads the history before it first parks
+            thread = Thread.currentThread();
+            try {
+                long next = start;
+                long balance = transactionPersistence.getBalanceBefore(accountId, next).minorUnits();
+                while (!closed) {
+                    final List<Transaction> batch = transactionPersistence.getTransactionHistory(accountId, next,
+                            BATCH_SIZE);
+                    if (batch.isEmpty()) {
+                        // a write between the read above and the park leaves a permit, park returns at once
+                        final long parkedAt = System.nanoTime();
+                        LockSupport.parkNanos(this, heartbeatNanos);
+                        if (System.nanoTime() - parkedAt >= heartbeatNanos) {
+                            listener.onIdle();
+                        }
+                        continue;
+                    }
+
+                    final long historySize = transactionPersistence.getHistorySize(accountId);
+                    if (historySize - next > maxLag) {
+                        if (overflow == Overflow.DISCONNECT) {
+                            listener.onOverflow(next);
+                            return;
+                        }
+                        listener.onSkipped(next, historySize);
+                        next = historySize;
+                        balance = transactionPersistence.getBalanceBefore(accountId, next).minorUnits();
+                        continue;
+                    }
+
+                    for (var transaction : batch) {
+                        balance += transaction.getBalanceDelta();
+                        listener.onTransaction(next++, transaction, Money.ofMinor(balance));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Subscription to account {} ended: {}", accountId, e.toString());
+            } finally {
+                closed = true;
+                unregister(this);
+                activeSubscriptions.decrementAndGet();
+                listener.onClosed();
+            }
+        }
+    }
+}
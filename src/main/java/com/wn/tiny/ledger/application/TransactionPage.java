@@ -0,0 +1,11 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.util.List;
+
+/**
+ * A page of the transaction history. {@code nextCursor} is {@code null} when there is nothing left to read yet.
+ */
+public record TransactionPage(List<Transaction> transactions, String nextCursor) {
+}
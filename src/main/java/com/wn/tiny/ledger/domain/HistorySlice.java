@@ -0,0 +1,17 @@
+package com.wn.tiny.ledger.domain;
+
+import java.util.List;
+
+/**
+ * Transactions of a history read that skips the ones it does not select, such as a time range.
+ *
+ * @param nextSequence sequence number of the next selected transaction after the returned ones, -1 when there is none
+ */
+public record HistorySlice(List<Transaction> transactions, long nextSequence) {
+
+    public static final long NO_MORE = -1;
+
+    public boolean hasMore() {
+        return nextSequence != NO_MORE;
+    }
+}
@@ -0,0 +1,105 @@
+package com.wn.tiny.ledger.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point amount of money held as a {@code long} count of minor units (cents for a scale of 2).
+ * <p>
+ * Arithmetic never allocates intermediate {@link BigDecimal}s and fails instead of silently overflowing.
+ * {@link BigDecimal} is only used to convert from and to the API representation.
+ */
+public record Money(long minorUnits, int scale) implements Comparable<Money> {
+
+    /* Number of decimal places of the ledger currency */
+    public static final int LEDGER_SCALE = 2;
+    public static final Money ZERO = new Money(0, LEDGER_SCALE);
+
+    private static final int MAX_SCALE = 18;
+
+    public Money {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE);
+        }
+    }
+
+    public static Money of(BigDecimal amount) {
+        return of(amount, LEDGER_SCALE);
+    }
+
+    public static Money of(BigDecimal amount, int scale) {
+        if (amount.stripTrailingZeros().scale() > scale) {
+            throw new InvalidTransactionException("Amount must not have more than " + scale + " decimal places");
+        }
+        try {
+            return new Money(amount.setScale(scale).unscaledValue().longValueExact(), scale);
+        } catch (ArithmeticException e) {
+            throw new InvalidTransactionException("Amount is out of range");
+        }
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return new Money(minorUnits, LEDGER_SCALE);
+    }
+
+    public Money plus(Money other) {
+        requireSameScale(other);
+        return new Money(addExact(minorUnits, other.minorUnits), scale);
+    }
+
+    public Money minus(Money other) {
+        requireSameScale(other);
+        return new Money(addExact(minorUnits, negateExact(other.minorUnits)), scale);
+    }
+
+    public Money negate() {
+        return new Money(negateExact(minorUnits), scale);
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    /**
+     * Adds two amounts of minor units, failing with an {@link InvalidTransactionException} on overflow.
+     */
+    public static long addExact(long minorUnits, long otherMinorUnits) {
+        try {
+            return Math.addExact(minorUnits, otherMinorUnits);
+        } catch (ArithmeticException e) {
+            throw new InvalidTransactionException("Amount is out of range");
+        }
+    }
+
+    private static long negateExact(long minorUnits) {
+        try {
+            return Math.negateExact(minorUnits);
+        } catch (ArithmeticException e) {
+            throw new InvalidTransactionException("Amount is out of range");
+        }
+    }
+
+    /**
+     * Returns the amount without trailing zeros, {@code 125} rather than {@code 125.00}.
+     */
+    public BigDecimal toBigDecimal() {
+        var amount = BigDecimal.valueOf(minorUnits, scale).stripTrailingZeros();
+        return amount.scale() < 0 ? amount.setScale(0) : amount;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        requireSameScale(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return BigDecimal.valueOf(minorUnits, scale).toPlainString();
+    }
+
+    private void requireSameScale(Money other) {
+        if (scale != other.scale) {
+            throw new IllegalArgumentException("Cannot combine amounts with scales " + scale + " and " + other.scale);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.wn.tiny.ledger.domain;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Length of the buckets transactions are rolled up into.
+ */
+public enum RollupPeriod {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    RollupPeriod(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @return the start of the bucket the timestamp falls in
+     */
+    public LocalDateTime bucketStart(LocalDateTime timestamp) {
+        return timestamp.truncatedTo(unit);
+    }
+}
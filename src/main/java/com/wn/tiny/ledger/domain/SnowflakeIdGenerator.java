@@ -0,0 +1,126 @@
+package com.wn.tiny.ledger.domain;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates time-ordered ids from a 64-bit number: 41 bits of milliseconds since 2024-01-01T00:00:00Z, 10 bits of
+ * node id and 12 bits of sequence within the millisecond.
+ * <p>
+ * Ids are strictly increasing for a generator, even when the clock goes back or more than 4096 ids are taken within a
+ * millisecond: the generator then runs ahead of the clock until the clock catches up, instead of waiting for it.
+ * Generators on different nodes never produce the same id. The number is encoded as 13 characters of Crockford base32,
+ * so ids of the same length compare as strings in the order they were generated and can be ordered, ranged or decoded
+ * back to their time with {@link #timestampOf}.
+ */
+public class SnowflakeIdGenerator implements TransactionIdGenerator {
+
+    public static final int MAX_NODE_ID = (1 << 10) - 1;
+    public static final int ID_LENGTH = 13;
+
+    static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final int TIME_SHIFT = SEQUENCE_BITS + NODE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    /* Value of each character of the alphabet, -1 for the other characters */
+    private static final byte[] DIGITS = digits();
+
+    private final long nodeBits;
+    private final LongSupplier clock;
+    /* Last id handed out */
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+    }
+
+    @Override
+    public String nextId() {
+        return encode(nextLong());
+    }
+
+    long nextLong() {
+        final long now = ((clock.getAsLong() - EPOCH_MILLIS) << TIME_SHIFT) | nodeBits;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = previous + 1;
+            if ((next & SEQUENCE_MASK) == 0) {
+                // sequence exhausted, borrow the next millisecond
+                next = (((previous >>> TIME_SHIFT) + 1) << TIME_SHIFT) | nodeBits;
+            }
+            next = Math.max(next, now);
+        } while (!last.compareAndSet(previous, next));
+        return next;
+    }
+
+    /**
+     * @return the time an id of this generator was taken at, in milliseconds since the Unix epoch
+     */
+    public static long timestampOf(String id) {
+        return (decode(id) >>> TIME_SHIFT) + EPOCH_MILLIS;
+    }
+
+    /**
+     * @return the id encoding a number of this generator, the inverse of {@link #parse}
+     */
+    public static String encode(long value) {
+        final char[] chars = new char[ID_LENGTH];
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the number an id of this generator encodes, or -1 when the string is not such an id
+     */
+    public static long parse(String id) {
+        if (id.length() != ID_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            final char c = id.charAt(i);
+            final int digit = c < DIGITS.length ? DIGITS[c] : -1;
+            // the first character only holds the top 4 bits, and numbers of this generator are never negative
+            if (digit < 0 || (i == 0 && digit > 7)) {
+                return -1;
+            }
+            value = (value << 5) | digit;
+        }
+        return value;
+    }
+
+    static long decode(String id) {
+        final long value = parse(id);
+        if (value < 0) {
+            throw new IllegalArgumentException("Not a time-ordered id: " + id);
+        }
+        return value;
+    }
+
+    private static byte[] digits() {
+        final byte[] digits = new byte['Z' + 1];
+        Arrays.fill(digits, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            digits[ALPHABET[i]] = (byte) i;
+        }
+        return digits;
+    }
+}
@@ -1,24 +1,36 @@
 package com.wn.tiny.ledger.domain;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 public class Transaction {
 
     private final String id;
-    private final BigDecimal amount;
+    private final Money amount;
     private final TransactionType type;
     private final LocalDateTime timestamp;
 
-    public Transaction(BigDecimal amount, TransactionType type) {
-        this.id = UUID.randomUUID().toString().replaceAll("-", "");
+    public Transaction(TransactionIdGenerator idGenerator, Money amount, TransactionType type) {
+        this.id = idGenerator.nextId();
         this.amount = amount;
         this.type = type;
         this.timestamp = LocalDateTime.now();
         validate();
     }
 
+    /**
+     * Rebuilds a transaction that was already recorded, for example when it is read back from storage.
+     */
+    public Transaction(String id, Money amount, TransactionType type, LocalDateTime timestamp) {
+        this.id = id;
+        this.amount = amount;
+        this.type = type;
+        this.timestamp = timestamp;
+        validate();
+        if (id == null || timestamp == null) {
+            throw new InvalidTransactionException("Recorded transaction must have an id and a timestamp");
+        }
+    }
+
     private void validate() {
         if (type == null) {
             throw new InvalidTransactionException("Transaction type must be specified");
@@ -26,13 +38,23 @@ public class Transaction {
         if (amount == null || amount.signum() <= 0) {
             throw new InvalidTransactionException("Transaction amount must be positive");
         }
+        if (amount.scale() != Money.LEDGER_SCALE) {
+            throw new InvalidTransactionException("Transaction amount must have the ledger scale");
+        }
+    }
+
+    /**
+     * Returns the change this transaction makes to the balance, in minor units.
+     */
+    public long getBalanceDelta() {
+        return type == TransactionType.DEPOSIT ? amount.minorUnits() : -amount.minorUnits();
     }
 
     public String getId() {
         return id;
     }
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
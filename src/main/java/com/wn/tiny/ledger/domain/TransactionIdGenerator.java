@@ -0,0 +1,10 @@
+package com.wn.tiny.ledger.domain;
+
+/**
+ * Source of the ids of new transactions. Ids must be unique, they are used as the reference of a transaction.
+ */
+@FunctionalInterface
+public interface TransactionIdGenerator {
+
+    String nextId();
+}
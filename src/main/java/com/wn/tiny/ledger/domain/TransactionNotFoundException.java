@@ -0,0 +1,11 @@
+package com.wn.tiny.ledger.domain;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_FOUND)
+public class TransactionNotFoundException extends RuntimeException {
+    public TransactionNotFoundException(String reference) {
+        super("Transaction not found: " + reference);
+    }
+}
@@ -1,18 +1,65 @@
 package com.wn.tiny.ledger.domain;
 
-import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.function.Predicate;
 import java.util.Optional;
+import java.util.function.LongPredicate;
 
+/**
+ * Storage of the transactions and balances of every account. Accounts are created by their first transaction,
+ * reading an unknown account behaves as reading an empty one.
+ */
 public interface TransactionPersistence {
 
-    void addTransaction(Transaction transaction, Predicate<BigDecimal> balanceValidation);
+    /**
+     * Records the transaction and updates the balance of the account atomically. The validation receives the current
+     * balance in minor units of {@link Money#LEDGER_SCALE}, and the transaction is rejected when it returns false.
+     */
+    void addTransaction(String accountId, Transaction transaction, LongPredicate balanceValidation);
 
-    BigDecimal getBalance();
+    /**
+     * Records the transactions, in order, with a single update of the balance of the account: either all of them are
+     * recorded or none. The validation receives the balance before the first transaction.
+     */
+    void addTransactions(String accountId, List<Transaction> transactions, LongPredicate balanceValidation);
 
-    Optional<Transaction> findTransaction(String id);
+    Money getBalance(String accountId);
 
-    List<Transaction> getTransactionHistory();
+    /**
+     * Returns the balance of the account counting only the transactions with a timestamp at or before {@code asOf}.
+     */
+    Money getBalance(String accountId, LocalDateTime asOf);
+
+    /**
+     * Returns the balance of the account after its first {@code sequence} transactions, in history order.
+     */
+    Money getBalanceBefore(String accountId, long sequence);
+
+    /**
+     * Returns the number of transactions in the history of the account, the sequence number of the next one.
+     */
+    long getHistorySize(String accountId);
+
+    Optional<Transaction> findTransaction(String accountId, String id);
+
+    List<Transaction> getTransactionHistory(String accountId);
+
+    /**
+     * Returns at most {@code limit} transactions in recording order, starting at the given sequence number.
+     * Sequence numbers are positions in the history of the account and never change once assigned.
+     */
+    List<Transaction> getTransactionHistory(String accountId, long fromSequence, int limit);
+
+    /**
+     * Returns at most {@code limit} transactions with a timestamp in {@code [from, to)}, in recording order, starting
+     * at the given sequence number. Either bound may be {@code null}.
+     */
+    HistorySlice getTransactionHistory(String accountId, LocalDateTime from, LocalDateTime to, long fromSequence, int limit);
+
+    /**
+     * Returns the rollups of the period whose bucket overlaps {@code [from, to)}, ordered by bucket start then type.
+     * Either bound may be {@code null}. The cost depends on the number of buckets returned, not on the history.
+     */
+    List<TransactionRollup> getRollups(String accountId, RollupPeriod period, LocalDateTime from, LocalDateTime to);
 
 }
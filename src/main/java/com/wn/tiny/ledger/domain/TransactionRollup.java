@@ -0,0 +1,10 @@
+package com.wn.tiny.ledger.domain;
+
+import java.time.LocalDateTime;
+
+/**
+ * Totals of the transactions of one type recorded in the bucket of a {@link RollupPeriod} starting at {@code start}.
+ */
+public record TransactionRollup(LocalDateTime start, TransactionType type, long count, Money total, Money min,
+                                Money max) {
+}
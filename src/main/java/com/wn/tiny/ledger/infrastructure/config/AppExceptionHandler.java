@@ -1,17 +1,26 @@
 package com.wn.tiny.ledger.infrastructure.config;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.wn.tiny.ledger.application.FeedUnavailableException;
 import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.TransactionNotFoundException;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReadOnlyReplicaException;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicaNotCaughtUpException;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.validation.FieldError;
+import org.springframework.validation.method.ParameterErrors;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -45,6 +54,35 @@ public class AppExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(HandlerMethodValidationException.class)
+    public ResponseEntity<ErrorResponse> handleParameterValidationExceptions(HandlerMethodValidationException ex, HttpServletRequest request) {
+        Map<String, List<String>> errors = new HashMap<>();
+        ex.getAllValidationResults().forEach(result -> {
+            // request bodies report their own fields, prefixed by their index in a list body, plain parameters are
+            // reported by name
+            if (result instanceof ParameterErrors parameterErrors) {
+                String prefix = parameterErrors.getContainerIndex() == null ? "" : "[" + parameterErrors.getContainerIndex() + "].";
+                parameterErrors.getFieldErrors().forEach(error -> errors
+                        .computeIfAbsent(prefix + error.getField(), k -> new ArrayList<>()).add(error.getDefaultMessage()));
+                return;
+            }
+            String parameterName = result.getMethodParameter().getParameterName();
+            result.getResolvableErrors().forEach(error ->
+                    errors.computeIfAbsent(parameterName, k -> new ArrayList<>()).add(error.getDefaultMessage()));
+        });
+
+        var errorResponse = new ErrorResponse(
+                Instant.now(),
+                HttpStatus.BAD_REQUEST.value(),
+                "Bad Request",
+                "Validation failed for one or more fields",
+                request.getRequestURI(),
+                errors
+        );
+        log.error("Validation failed for one or more fields", ex);
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(InvalidTransactionException.class)
     public ResponseEntity<ErrorResponse> handleBusinessException(InvalidTransactionException ex, HttpServletRequest request) {
         var status = HttpStatus.BAD_REQUEST;
@@ -59,6 +97,63 @@ public class AppExceptionHandler {
         return new ResponseEntity<>(errorResponse, status);
     }
 
+    @ExceptionHandler(TransactionNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleNotFoundException(TransactionNotFoundException ex, HttpServletRequest request) {
+        var status = HttpStatus.NOT_FOUND;
+        var errorResponse = new ErrorResponse(
+                Instant.now(),
+                status.value(),
+                "Not Found",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        log.debug("Transaction not found: {}", ex.getMessage());
+        return new ResponseEntity<>(errorResponse, status);
+    }
+
+    @ExceptionHandler(ReadOnlyReplicaException.class)
+    public ResponseEntity<ErrorResponse> handleReadOnlyReplicaException(ReadOnlyReplicaException ex, HttpServletRequest request) {
+        // 421 Misdirected Request, the request has to go to another instance
+        var status = HttpStatusCode.valueOf(421);
+        var errorResponse = new ErrorResponse(
+                Instant.now(),
+                status.value(),
+                "Misdirected Request",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        log.debug("Write sent to a follower: {}", request.getRequestURI());
+        return new ResponseEntity<>(errorResponse, status);
+    }
+
+    @ExceptionHandler(ReplicaNotCaughtUpException.class)
+    public ResponseEntity<ErrorResponse> handleReplicaNotCaughtUpException(ReplicaNotCaughtUpException ex, HttpServletRequest request) {
+        var status = HttpStatus.SERVICE_UNAVAILABLE;
+        var errorResponse = new ErrorResponse(
+                Instant.now(),
+                status.value(),
+                "Service Unavailable",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        log.debug("Follower not caught up: {}", ex.getMessage());
+        return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, "1").body(errorResponse);
+    }
+
+    @ExceptionHandler(FeedUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleFeedUnavailableException(FeedUnavailableException ex, HttpServletRequest request) {
+        var status = HttpStatus.SERVICE_UNAVAILABLE;
+        var errorResponse = new ErrorResponse(
+                Instant.now(),
+                status.value(),
+                "Service Unavailable",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        log.debug("Change feed full: {}", ex.getMessage());
+        return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, "1").body(errorResponse);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGenericException(Exception ex, HttpServletRequest request) {
         final HttpStatus status = HttpStatus.INTERNAL_SERVER_ERROR;
@@ -88,6 +183,20 @@ public class AppExceptionHandler {
         return new ResponseEntity<>(errorResponse, status);
     }
 
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<ErrorResponse> handleTypeMismatchException(MethodArgumentTypeMismatchException ex, HttpServletRequest request) {
+        var status = HttpStatus.BAD_REQUEST;
+        var errorResponse = new ErrorResponse(
+                Instant.now(),
+                status.value(),
+                "Bad Request",
+                "Invalid value for parameter " + ex.getName(),
+                request.getRequestURI()
+        );
+        log.debug("Invalid value for parameter {}: {}", ex.getName(), ex.getValue());
+        return new ResponseEntity<>(errorResponse, status);
+    }
+
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public record ErrorResponse(
             Instant timestamp,
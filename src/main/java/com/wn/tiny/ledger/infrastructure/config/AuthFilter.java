@@ -1,5 +1,7 @@
 package com.wn.tiny.ledger.infrastructure.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -14,6 +16,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Profile("prod")
@@ -22,9 +25,13 @@ public class AuthFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(AuthFilter.class);
 
     private final JWTService jwtService;
+    private final Timer validTokenTimer;
+    private final Timer invalidTokenTimer;
 
-    public AuthFilter(JWTService jwtService) {
+    public AuthFilter(JWTService jwtService, MeterRegistry meterRegistry) {
         this.jwtService = jwtService;
+        this.validTokenTimer = verificationTimer(meterRegistry, "valid");
+        this.invalidTokenTimer = verificationTimer(meterRegistry, "invalid");
     }
 
     @Override
@@ -42,12 +49,15 @@ public class AuthFilter extends OncePerRequestFilter {
 
         if (jwt != null) {
 
+            final long start = System.nanoTime();
             try {
                 var authentication = jwtService.getAuthentication(jwt);
+                validTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
                 SecurityContextHolder.getContext().setAuthentication(authentication);
                 logger.debug("Authenticated user: {}", authentication.getName());
 
             } catch (Exception e) {
+                invalidTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
                 logger.debug("Invalid JWT token: {}", e.getMessage());
                 SecurityContextHolder.clearContext();
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -60,4 +70,12 @@ public class AuthFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
 
     }
+
+    private static Timer verificationTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("auth.jwt.verification")
+                .description("Time taken to verify the JWT of a request, cached tokens included")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
 }
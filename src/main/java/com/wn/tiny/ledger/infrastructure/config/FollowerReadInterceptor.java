@@ -0,0 +1,59 @@
+package com.wn.tiny.ledger.infrastructure.config;
+
+import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReadOnlyReplicaException;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicaNotCaughtUpException;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationFollower;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Serves the ledger routes of a follower: rejects writes, waits for the sequence number a client read from the leader
+ * when it sends one back, and tells the sequence and lag of every read.
+ */
+class FollowerReadInterceptor implements HandlerInterceptor {
+
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ReplicationFollower follower;
+    private final Duration readTimeout;
+
+    FollowerReadInterceptor(ReplicationFollower follower, Duration readTimeout) {
+        this.follower = follower;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                             @NonNull Object handler) {
+        if (!READ_METHODS.contains(request.getMethod())) {
+            throw new ReadOnlyReplicaException();
+        }
+        final long sequence = requestedSequence(request.getHeader(ReplicationConfig.SEQUENCE_HEADER));
+        if (!follower.awaitSequence(sequence, readTimeout)) {
+            throw new ReplicaNotCaughtUpException(follower.isSynced()
+                    ? "This follower did not reach sequence " + sequence + " of the leader within " + readTimeout
+                    : "This follower is loading a snapshot of the leader");
+        }
+        // read before the handler, the response holds at least this much of the leader
+        response.setHeader(ReplicationConfig.SEQUENCE_HEADER, Long.toString(follower.getAppliedSequence()));
+        response.setHeader(ReplicationConfig.REPLICATION_LAG_HEADER, Long.toString(follower.getLag()));
+        return true;
+    }
+
+    private static long requestedSequence(String header) {
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidTransactionException("Invalid " + ReplicationConfig.SEQUENCE_HEADER + " header: " + header);
+        }
+    }
+}
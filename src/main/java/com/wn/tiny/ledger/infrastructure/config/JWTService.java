@@ -2,35 +2,74 @@ package com.wn.tiny.ledger.infrastructure.config;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Service
 public class JWTService {
 
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
     private final SecretKey secretKey;
+    private final Clock clock;
+    /* Thread safe and immutable, built once instead of on every request */
+    private final JwtParser parser;
+    /*
+     * Verified tokens, keyed by their SHA-256 digest so the tokens themselves are not kept around. An entry is only
+     * used until the token expires, so caching never extends the life of a token. Invalid tokens are never cached.
+     * The cached authentication is shared by every request with the token and is not modified after it is built.
+     * Guarded by itself, in access order: once full, the token used least recently makes room for the new one.
+     */
+    private final LinkedHashMap<ByteBuffer, VerifiedToken> verifiedTokens;
+
+    @Autowired
+    public JWTService(@Value("${jwt.secret}") String secretKey,
+                      @Value("${jwt.cache-size:10000}") int cacheSize) {
+        this(secretKey, cacheSize, Clock.systemUTC());
+    }
 
-    public JWTService(@Value("${jwt.secret}") String secretKey) {
+    JWTService(String secretKey, int cacheSize, Clock clock) {
         this.secretKey = Keys.hmacShaKeyFor(secretKey.getBytes());
+        this.clock = clock;
+        this.parser = Jwts.parser()
+                .verifyWith(this.secretKey)
+                .clock(() -> new Date(clock.millis()))
+                .build();
+        this.verifiedTokens = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, VerifiedToken> eldest) {
+                return size() > cacheSize;
+            }
+        };
     }
 
     public String generateToken(String userId, String jwtId) {
+        final long now = clock.millis();
         return Jwts.builder()
                 .subject(userId)
                 .id(jwtId)
-                .issuedAt(new Date())
-                .expiration(new Date(System.currentTimeMillis() + 3600000L))
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + 3600000L))
                 .signWith(this.secretKey)
                 .compact();
     }
@@ -47,7 +86,20 @@ public class JWTService {
     }
 
     public Authentication getAuthentication(String token) {
-        Jws<Claims> claims = Jwts.parser().verifyWith(this.secretKey).build().parseSignedClaims(token);
+        final var digest = digest(token);
+        final long now = clock.millis();
+
+        synchronized (verifiedTokens) {
+            final var verified = verifiedTokens.get(digest);
+            if (verified != null) {
+                if (now < verified.expiresAt()) {
+                    return verified.authentication();
+                }
+                verifiedTokens.remove(digest);
+            }
+        }
+
+        Jws<Claims> claims = parser.parseSignedClaims(token);
 
         if (claims == null) {
             throw new RuntimeException("Invalid JWT token");
@@ -67,7 +119,33 @@ public class JWTService {
 
         userAuthToken.setDetails(JwtId);
 
+        final Date expiration = claims.getPayload().getExpiration();
+        if (expiration != null) {
+            synchronized (verifiedTokens) {
+                verifiedTokens.put(digest, new VerifiedToken(userAuthToken, expiration.getTime()));
+            }
+        }
+
         return userAuthToken;
     }
 
+    /**
+     * @return the number of verified tokens cached, expired ones included until they are evicted
+     */
+    int cachedTokens() {
+        synchronized (verifiedTokens) {
+            return verifiedTokens.size();
+        }
+    }
+
+    private static ByteBuffer digest(String token) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record VerifiedToken(Authentication authentication, long expiresAt) {
+    }
 }
@@ -0,0 +1,42 @@
+package com.wn.tiny.ledger.infrastructure.config;
+
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationLeader;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Tells the last sequence number of the leader on its responses, written once the handler is done so that it covers
+ * the transactions a write just recorded. A client sends it back to a follower to read its own writes.
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "ledger.replication.role", havingValue = "LEADER")
+public class LeaderSequenceAdvice implements ResponseBodyAdvice<Object> {
+
+    private final ReplicationLeader leader;
+
+    public LeaderSequenceAdvice(ReplicationLeader leader) {
+        this.leader = leader;
+    }
+
+    @Override
+    public boolean supports(@NonNull MethodParameter returnType,
+                            @NonNull Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, @NonNull MethodParameter returnType,
+                                  @NonNull MediaType selectedContentType,
+                                  @NonNull Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  @NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response) {
+        response.getHeaders().set(ReplicationConfig.SEQUENCE_HEADER, Long.toString(leader.lastSequence()));
+        return body;
+    }
+}
@@ -0,0 +1,114 @@
+package com.wn.tiny.ledger.infrastructure.config;
+
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import com.wn.tiny.ledger.infrastructure.repository.SegmentStore;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionSequencer;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationFollower;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationLeader;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Size and contention of the in-memory ledger, read from the repository when the metrics are scraped.
+     */
+    @Bean
+    public MeterBinder accountRepositoryMetrics(AccountRepository accountRepository) {
+        return registry -> {
+            Gauge.builder("ledger.history.transactions", accountRepository, AccountRepository::getTransactionCount)
+                    .description("Transactions held in memory, over all accounts")
+                    .register(registry);
+            Gauge.builder("ledger.history.memory.estimate", accountRepository,
+                            AccountRepository::getEstimatedHistoryBytes)
+                    .description("Rough heap used by the transactions held in memory")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("ledger.accounts", accountRepository, AccountRepository::getAccountCount)
+                    .description("Accounts held in memory")
+                    .register(registry);
+            FunctionTimer.builder("ledger.account.lock.wait", accountRepository,
+                            AccountRepository::getLockAcquisitions, AccountRepository::getLockWaitNanos,
+                            TimeUnit.NANOSECONDS)
+                    .description("Time writes waited for the lock of their account, held by another write")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Writes waiting for the writer thread of the sequencer.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ledger.sequencer.enabled", havingValue = "true")
+    public MeterBinder transactionSequencerMetrics(TransactionSequencer transactionSequencer) {
+        return registry -> Gauge.builder("ledger.sequencer.pending", transactionSequencer,
+                        TransactionSequencer::pendingWrites)
+                .description("Writes waiting in the buffer of the sequencer for its writer thread")
+                .register(registry);
+    }
+
+    /**
+     * Size of the history sealed into segment files and hit rate of the cache of chunks read back from them.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ledger.storage.tiering.enabled", havingValue = "true")
+    public MeterBinder segmentStoreMetrics(SegmentStore segmentStore) {
+        return registry -> {
+            Gauge.builder("ledger.history.segments.size", segmentStore, SegmentStore::getSegmentBytes)
+                    .description("Size of the segment files the oldest transactions are sealed into")
+                    .baseUnit("bytes")
+                    .register(registry);
+            FunctionCounter.builder("ledger.history.segments.cache.hits", segmentStore, SegmentStore::getCacheHits)
+                    .description("Reads of a sealed chunk served by the cache")
+                    .register(registry);
+            FunctionCounter.builder("ledger.history.segments.cache.misses", segmentStore, SegmentStore::getCacheMisses)
+                    .description("Reads of a sealed chunk decoded from its segment file")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Last sequence number of the leader and the followers streaming from it.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ledger.replication.role", havingValue = "LEADER")
+    public MeterBinder replicationLeaderMetrics(ReplicationLeader replicationLeader) {
+        return registry -> {
+            Gauge.builder("ledger.replication.sequence", replicationLeader, ReplicationLeader::lastSequence)
+                    .description("Sequence number of the last record of the leader")
+                    .register(registry);
+            Gauge.builder("ledger.replication.followers", replicationLeader, ReplicationLeader::getFollowerCount)
+                    .description("Followers connected to the leader")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * How far a follower is behind its leader, in records and in time since it last heard from it.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ledger.replication.role", havingValue = "FOLLOWER")
+    public MeterBinder replicationFollowerMetrics(ReplicationFollower replicationFollower) {
+        return registry -> {
+            Gauge.builder("ledger.replication.sequence", replicationFollower, ReplicationFollower::getAppliedSequence)
+                    .description("Sequence number of the last record of the leader applied by the follower")
+                    .register(registry);
+            Gauge.builder("ledger.replication.lag", replicationFollower, ReplicationFollower::getLag)
+                    .description("Records of the leader not applied by the follower yet")
+                    .register(registry);
+            Gauge.builder("ledger.replication.staleness", replicationFollower,
+                            follower -> follower.getStaleness().toNanos() / 1e9)
+                    .description("Time since the follower last heard from its leader")
+                    .baseUnit("seconds")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package com.wn.tiny.ledger.infrastructure.config;
+
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.TransactionIdGenerator;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import com.wn.tiny.ledger.infrastructure.repository.SegmentStore;
+import com.wn.tiny.ledger.infrastructure.repository.StorageEngine;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionJournal;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionSequencer;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationLeader;
+import com.wn.tiny.ledger.infrastructure.repository.wal.DurabilityMode;
+import com.wn.tiny.ledger.infrastructure.repository.wal.SnapshotStore;
+import com.wn.tiny.ledger.infrastructure.repository.wal.Snapshotter;
+import com.wn.tiny.ledger.infrastructure.repository.wal.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class PersistenceConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceConfig.class);
+
+    @Bean
+    @ConditionalOnProperty(name = "ledger.wal.enabled", havingValue = "true")
+    public WriteAheadLog writeAheadLog(@Value("${ledger.wal.directory:data}") Path directory,
+                                       @Value("${ledger.wal.durability:BATCH}") DurabilityMode durabilityMode,
+                                       @Value("${ledger.wal.fsync-interval:10ms}") Duration fsyncInterval) throws IOException {
+        logger.info("Write-ahead log enabled in {} with {} durability", directory.toAbsolutePath(), durabilityMode);
+        return WriteAheadLog.open(directory, durabilityMode, fsyncInterval);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ledger.wal.enabled", havingValue = "true")
+    public SnapshotStore snapshotStore(@Value("${ledger.wal.directory:data}") Path directory) {
+        return new SnapshotStore(directory);
+    }
+
+    /**
+     * Time-ordered transaction ids. Every instance writing to the same ledger needs its own node id.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public TransactionIdGenerator transactionIdGenerator(@Value("${ledger.node-id:0}") int nodeId) {
+        return new SnowflakeIdGenerator(nodeId);
+    }
+
+    /**
+     * Seals the oldest columnar history into segment files once it takes more than the hot budget.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ledger.storage.tiering.enabled", havingValue = "true")
+    public SegmentStore segmentStore(@Value("${ledger.storage.engine:OBJECTS}") StorageEngine storageEngine,
+                                     @Value("${ledger.storage.tiering.directory:segments}") Path directory,
+                                     @Value("${ledger.storage.tiering.hot-budget:256MB}") DataSize hotBudget,
+                                     @Value("${ledger.storage.tiering.cache-size:64MB}") DataSize cacheSize)
+            throws IOException {
+        if (storageEngine != StorageEngine.COLUMNAR) {
+            throw new IllegalStateException("Tiered storage needs the COLUMNAR storage engine");
+        }
+        logger.info("History over {} is sealed into {}, with a cache of {} for the sealed chunks read back",
+                hotBudget, directory.toAbsolutePath(), cacheSize);
+        return SegmentStore.open(directory, hotBudget.toBytes(), cacheSize.toBytes());
+    }
+
+    @Bean
+    public AccountRepository accountRepository(ObjectProvider<WriteAheadLog> writeAheadLog,
+                                               ObjectProvider<SnapshotStore> snapshotStore,
+                                               ObjectProvider<SegmentStore> segmentStore,
+                                               ObjectProvider<ReplicationLeader> replicationLeader,
+                                               @Value("${ledger.storage.engine:OBJECTS}") StorageEngine storageEngine)
+            throws IOException {
+        logger.info("Transaction history held with the {} storage engine", storageEngine);
+        final var wal = writeAheadLog.getIfAvailable();
+        // the leader wraps the write-ahead log, when there is one
+        final var leader = replicationLeader.getIfAvailable();
+        final TransactionJournal journal = leader != null ? leader : wal != null ? wal : TransactionJournal.NONE;
+        final var segments = segmentStore.getIfAvailable();
+        final var repository = segments == null ? new AccountRepository(journal, storageEngine)
+                : new AccountRepository(journal, segments);
+
+        if (wal != null) {
+            final var report = Snapshotter.recover(repository, wal, snapshotStore.getObject());
+            logger.info("Recovered {} transactions from the snapshot up to sequence {} in {} ms, then replayed {} "
+                            + "transactions ({} already in the snapshot) from {} in {} ms, {} ms in total",
+                    report.snapshotTransactions(), report.snapshotSequence(), report.snapshotLoadTime().toMillis(),
+                    report.replayedTransactions(), report.skippedRecords(), wal.getDirectory(),
+                    report.replayTime().toMillis(), report.totalTime().toMillis());
+        }
+        if (leader != null) {
+            leader.start(repository, wal == null ? 0 : wal.lastSequence());
+        }
+        return repository;
+    }
+
+    /**
+     * Routes every write through a single writer thread instead of letting request threads compete on the balance.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "ledger.sequencer.enabled", havingValue = "true")
+    public TransactionSequencer transactionSequencer(AccountRepository accountRepository,
+                                                     @Value("${ledger.sequencer.capacity:16384}") int capacity) {
+        logger.info("Transactions are recorded by a single writer with room for {} pending writes", capacity);
+        return new TransactionSequencer(accountRepository, capacity);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ledger.snapshot.enabled", havingValue = "true")
+    public Snapshotter snapshotter(AccountRepository accountRepository, WriteAheadLog writeAheadLog,
+                                   SnapshotStore snapshotStore,
+                                   @Value("${ledger.snapshot.interval:5m}") Duration interval) {
+        logger.info("Ledger snapshots enabled every {}", interval);
+        final var snapshotter = new Snapshotter(accountRepository, writeAheadLog, snapshotStore);
+        snapshotter.start(interval);
+        return snapshotter;
+    }
+}
@@ -0,0 +1,87 @@
+package com.wn.tiny.ledger.infrastructure.config;
+
+import com.wn.tiny.ledger.application.LedgerService;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionJournal;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationFollower;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationLeader;
+import com.wn.tiny.ledger.infrastructure.repository.wal.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * Leader/follower replication: the leader accepts every write and streams its records to followers, which serve
+ * reads of the ledger routes only.
+ */
+@Configuration
+public class ReplicationConfig implements WebMvcConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationConfig.class);
+
+    /* Last sequence number of the leader covered by a response, sent back by a client to read its own writes */
+    public static final String SEQUENCE_HEADER = "X-Ledger-Sequence";
+    /* Records of the leader a follower had not applied yet when it served the read */
+    public static final String REPLICATION_LAG_HEADER = "X-Replication-Lag";
+
+    private final ObjectProvider<ReplicationFollower> replicationFollower;
+    private final Duration readTimeout;
+
+    public ReplicationConfig(ObjectProvider<ReplicationFollower> replicationFollower,
+                             @Value("${ledger.replication.read-timeout:1s}") Duration readTimeout) {
+        this.replicationFollower = replicationFollower;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Journal of every write, wrapping the write-ahead log when it is enabled. Starts listening once the repository
+     * is recovered.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ledger.replication.role", havingValue = "LEADER")
+    public ReplicationLeader replicationLeader(ObjectProvider<WriteAheadLog> writeAheadLog,
+                                               @Value("${ledger.replication.port:7070}") int port,
+                                               @Value("${ledger.replication.buffer:100000}") int bufferSize) {
+        final var wal = writeAheadLog.getIfAvailable();
+        logger.info("Replication leader on port {}, keeping the last {} records for followers that reconnect",
+                port, bufferSize);
+        return new ReplicationLeader(wal == null ? TransactionJournal.NONE : wal, port, bufferSize);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ledger.replication.role", havingValue = "FOLLOWER")
+    public ReplicationFollower replicationFollower(AccountRepository accountRepository, LedgerService ledgerService,
+                                                   @Value("${ledger.replication.leader:localhost:7070}") String leader,
+                                                   @Value("${ledger.wal.enabled:false}") boolean walEnabled) {
+        if (walEnabled) {
+            throw new IllegalStateException("A follower holds the state of its leader, ledger.wal.enabled must be false");
+        }
+        final int separator = leader.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalStateException("ledger.replication.leader must be host:port, not " + leader);
+        }
+        logger.info("Replication follower of {}, reads wait up to {} for the sequence a client asks for", leader,
+                readTimeout);
+        final var follower = new ReplicationFollower(accountRepository, leader.substring(0, separator),
+                Integer.parseInt(leader.substring(separator + 1)), ledgerService::replicated);
+        follower.start();
+        return follower;
+    }
+
+    @Override
+    public void addInterceptors(@NonNull InterceptorRegistry registry) {
+        final var follower = replicationFollower.getIfAvailable();
+        if (follower != null) {
+            registry.addInterceptor(new FollowerReadInterceptor(follower, readTimeout)).addPathPatterns("/v1/ledger/**");
+        }
+    }
+}
@@ -22,6 +22,9 @@ public class SecurityConfig implements WebMvcConfigurer {
             AntPathRequestMatcher.antMatcher("/swagger-ui/**"),
             AntPathRequestMatcher.antMatcher("/swagger-ui.html"),
             AntPathRequestMatcher.antMatcher("/v3/**"),
+            // scraped by monitoring, which has no user session
+            AntPathRequestMatcher.antMatcher("/actuator/health"),
+            AntPathRequestMatcher.antMatcher("/actuator/prometheus"),
     };
     private final AuthFilter authFilter;
 
@@ -1,56 +1,271 @@
 package com.wn.tiny.ledger.infrastructure.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.wn.tiny.ledger.application.LedgerService;
+import com.wn.tiny.ledger.application.NewTransaction;
+import com.wn.tiny.ledger.application.TransactionFeed;
+import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.RollupPeriod;
+import com.wn.tiny.ledger.domain.Transaction;
 import com.wn.tiny.ledger.infrastructure.controller.dto.BalanceResponse;
+import com.wn.tiny.ledger.infrastructure.controller.dto.FeedGapResponse;
+import com.wn.tiny.ledger.infrastructure.controller.dto.RollupResponse;
+import com.wn.tiny.ledger.infrastructure.controller.dto.TransactionEventResponse;
 import com.wn.tiny.ledger.infrastructure.controller.dto.TransactionRequest;
 import com.wn.tiny.ledger.infrastructure.controller.dto.TransactionResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @RequestMapping("/v1/ledger")
 public class LedgerController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    /* Account used by the routes that are not scoped to an account */
+    public static final String DEFAULT_ACCOUNT_ID = "default";
+    static final String ACCOUNT_ID_PATTERN = "[A-Za-z0-9_-]{1,64}";
+    static final String ACCOUNT_ID_MESSAGE = "Account id must have 1 to 64 letters, digits, '_' or '-'";
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 1000;
+    private static final int EXPORT_FLUSH_INTERVAL = 256;
+
     private final LedgerService ledgerService;
+    private final ObjectWriter exportWriter;
+    private final long feedTimeoutMillis;
 
-    public LedgerController(LedgerService ledgerService) {
+    public LedgerController(LedgerService ledgerService, ObjectMapper objectMapper,
+                            @Value("${ledger.feed.timeout:5m}") Duration feedTimeout) {
         this.ledgerService = ledgerService;
+        this.feedTimeoutMillis = feedTimeout.toMillis();
+        // flushing is done in batches by the export itself, not after every record
+        this.exportWriter = objectMapper.writerFor(TransactionResponse.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @GetMapping({"/balance", "/accounts/{accountId}/balance"})
+    @Operation(summary = "Get the current balance of the account, or of the default account, or its balance as of the "
+            + "given ISO date-time")
+    @ApiResponse(responseCode = "200", description = "The balance of the account, counting the transactions recorded at "
+            + "or before asOf when it is given")
+    public ResponseEntity<BalanceResponse> getBalance(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf) {
+        return ResponseEntity
+                .ok(new BalanceResponse(ledgerService.getBalance(accountOrDefault(accountId), asOf).toBigDecimal()));
+    }
+
+    @GetMapping({"/history", "/accounts/{accountId}/history"})
+    @Operation(summary = "Get a page of the transaction history of the account, or of the default account, optionally "
+            + "limited to the transactions recorded from (inclusive) to (exclusive) the given ISO date-times")
+    @ApiResponse(responseCode = "200", description = "A page of the transaction history of the ledger, the "
+            + NEXT_CURSOR_HEADER + " header holds the cursor of the next page when there is one")
+    public ResponseEntity<List<TransactionResponse>> getTransactionHistory(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") @Min(1) @Max(MAX_PAGE_SIZE) int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        var page = ledgerService.getTransactionHistory(accountOrDefault(accountId), cursor, limit, from, to);
+        var transactionResponses = page.transactions().stream().map(TransactionResponse::from).toList();
+
+        var response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response
+                .body(transactionResponses);
+    }
+
+    @GetMapping({"/stats", "/accounts/{accountId}/stats"})
+    @Operation(summary = "Get the count, total, minimum and maximum of the transactions of the account, or of the "
+            + "default account, per type and per minute, hour or day, optionally limited to the buckets overlapping "
+            + "from (inclusive) to (exclusive) the given ISO date-times")
+    @ApiResponse(responseCode = "200", description = "The buckets that have transactions, ordered by start then type")
+    public ResponseEntity<List<RollupResponse>> getStats(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId,
+            @RequestParam(defaultValue = "HOUR") RollupPeriod period,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        var rollups = ledgerService.getStats(accountOrDefault(accountId), period, from, to);
+
+        return ResponseEntity
+                .ok(rollups.stream().map(RollupResponse::from).toList());
     }
 
-    @GetMapping("/balance")
-    @Operation(summary = "Get the current balance of the ledger")
-    @ApiResponse(responseCode = "200", description = "The current balance of the ledger")
-    public ResponseEntity<BalanceResponse> getBalance() {
+    @GetMapping(value = {"/history/export", "/accounts/{accountId}/history/export"},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream the full transaction history of the account, or of the default account, as NDJSON")
+    @ApiResponse(responseCode = "200", description = "One transaction per line, oldest first")
+    public ResponseEntity<StreamingResponseBody> exportTransactionHistory(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId) {
+        var transactions = ledgerService.getTransactionHistory(accountOrDefault(accountId));
+
         return ResponseEntity
-                .ok(new BalanceResponse(ledgerService.getBalance()));
+                .ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> writeNdjson(transactions, outputStream));
     }
 
-    @GetMapping("/history")
-    @Operation(summary = "Get the transaction history of the ledger")
-    @ApiResponse(responseCode = "200", description = "The transaction history of the ledger")
-    public ResponseEntity<List<TransactionResponse>> getTransactionHistory() {
-        var transactions = ledgerService.getTransactionHistory();
-        var transactionResponses = transactions.stream().map(TransactionResponse::from).toList();
+    @GetMapping(value = {"/feed", "/accounts/{accountId}/feed"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Subscribe to the transactions recorded on the account, or on the default account, as "
+            + "Server-Sent Events, from the given sequence number or from the next transaction")
+    @ApiResponse(responseCode = "200", description = "A 'transaction' event with the transaction and the balance after "
+            + "it for every recorded transaction, its id is the sequence number. A subscriber that falls too far behind "
+            + "gets an 'overflow' event and is disconnected, or with overflow=SKIP a 'skipped' event and goes on from "
+            + "the latest transaction. The stream ends after ledger.feed.timeout, the client resumes with from or "
+            + "Last-Event-ID")
+    @ApiResponse(responseCode = "503", description = "The change feed already serves its maximum number of subscribers")
+    public SseEmitter subscribe(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId,
+            @RequestParam(required = false) @Min(0) Long from,
+            @RequestHeader(name = LAST_EVENT_ID_HEADER, required = false) @Min(0) Long lastEventId,
+            @RequestParam(defaultValue = "DISCONNECT") TransactionFeed.Overflow overflow) {
+        // an EventSource reconnecting sends the id of the last event it received
+        final Long fromSequence = lastEventId != null ? Long.valueOf(lastEventId + 1) : from;
+        // a finite stream, the client reconnects and resumes, so dead connections do not hold a subscriber forever
+        final var emitter = new SseEmitter(feedTimeoutMillis);
+        final var subscription = ledgerService.subscribe(accountOrDefault(accountId), fromSequence, overflow,
+                new SseListener(emitter));
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        return emitter;
+    }
+
+    @GetMapping({"/transactions/{reference}", "/accounts/{accountId}/transactions/{reference}"})
+    @Operation(summary = "Get a transaction of the account, or of the default account, by its reference")
+    @ApiResponse(responseCode = "200", description = "The transaction with the given reference")
+    @ApiResponse(responseCode = "404", description = "No transaction exists with the given reference")
+    public ResponseEntity<TransactionResponse> getTransaction(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId,
+            @PathVariable String reference) {
+        var transaction = ledgerService.findTransaction(accountOrDefault(accountId), reference);
 
         return ResponseEntity
-                .ok(transactionResponses);
+                .ok(TransactionResponse.from(transaction));
     }
 
-    @PostMapping("/transactions")
+    @PostMapping({"/transactions", "/accounts/{accountId}/transactions"})
     @ResponseStatus(HttpStatus.CREATED)
-    @Operation(summary = "Create a new transaction")
-    @ApiResponse(responseCode = "201", description = "The transaction was created successfully")
-    public ResponseEntity<TransactionResponse> createTransaction(@Valid @RequestBody TransactionRequest request) {
-        var transaction = ledgerService.recordTransaction(request.amount(), request.type());
+    @Operation(summary = "Create a new transaction on the account, or on the default account")
+    @ApiResponse(responseCode = "201", description = "The transaction was created successfully, or was already "
+            + "created by an earlier request with the same " + IDEMPOTENCY_KEY_HEADER + " header")
+    public ResponseEntity<TransactionResponse> createTransaction(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false)
+            @Size(min = 1, max = LedgerService.MAX_IDEMPOTENCY_KEY_LENGTH) String idempotencyKey,
+            @Valid @RequestBody TransactionRequest request) {
+        var transaction = ledgerService.recordTransaction(accountOrDefault(accountId), Money.of(request.amount()),
+                request.type(), idempotencyKey);
 
         return ResponseEntity
                 .status(HttpStatus.CREATED).body(TransactionResponse.from(transaction));
     }
+
+    @PostMapping({"/transactions/batch", "/accounts/{accountId}/transactions/batch"})
+    @ResponseStatus(HttpStatus.CREATED)
+    @Operation(summary = "Create many transactions on the account, or on the default account, all of them or none")
+    @ApiResponse(responseCode = "201", description = "Every transaction was created, the results are in request order")
+    @ApiResponse(responseCode = "400", description = "No transaction was created, the error tells which one was rejected")
+    public ResponseEntity<List<TransactionResponse>> createTransactions(
+            @PathVariable(required = false) @Pattern(regexp = ACCOUNT_ID_PATTERN, message = ACCOUNT_ID_MESSAGE) String accountId,
+            @RequestBody @Size(min = 1, max = MAX_BATCH_SIZE, message = "Batch must contain between 1 and " + MAX_BATCH_SIZE + " transactions")
+            List<@Valid TransactionRequest> requests) {
+        List<NewTransaction> newTransactions = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            var request = requests.get(i);
+            try {
+                newTransactions.add(new NewTransaction(Money.of(request.amount()), request.type()));
+            } catch (InvalidTransactionException e) {
+                throw new InvalidTransactionException("Invalid transaction at index " + i + ": " + e.getMessage());
+            }
+        }
+        var transactions = ledgerService.recordTransactions(accountOrDefault(accountId), newTransactions);
+
+        return ResponseEntity
+                .status(HttpStatus.CREATED).body(transactions.stream().map(TransactionResponse::from).toList());
+    }
+
+    private static String accountOrDefault(String accountId) {
+        return accountId == null ? DEFAULT_ACCOUNT_ID : accountId;
+    }
+
+    private void writeNdjson(Iterable<Transaction> transactions, OutputStream outputStream) throws IOException {
+        // the generator is not closed, the servlet container owns the output stream
+        var generator = exportWriter.createGenerator(outputStream);
+        int written = 0;
+        for (var transaction : transactions) {
+            exportWriter.writeValue(generator, TransactionResponse.from(transaction));
+            generator.writeRaw('\n');
+
+            // the first record goes out right away, the rest in batches
+            if (++written % EXPORT_FLUSH_INTERVAL == 1) {
+                generator.flush();
+            }
+        }
+        generator.flush();
+    }
+
+    /* Runs on the thread of the subscription, the only one sending to the emitter */
+    private record SseListener(SseEmitter emitter) implements TransactionFeed.Listener {
+
+        @Override
+        public void onTransaction(long sequence, Transaction transaction, Money balance) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(sequence))
+                    .name("transaction")
+                    .data(TransactionEventResponse.from(sequence, transaction, balance), MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void onSkipped(long fromSequence, long toSequence) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(toSequence - 1))
+                    .name("skipped")
+                    .data(new FeedGapResponse(fromSequence, toSequence), MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void onOverflow(long nextSequence) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .name("overflow")
+                    .data(new FeedGapResponse(nextSequence, null), MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void onIdle() throws IOException {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        }
+
+        @Override
+        public void onClosed() {
+            emitter.complete();
+        }
+    }
 }
@@ -0,0 +1,11 @@
+package com.wn.tiny.ledger.infrastructure.controller.dto;
+
+/**
+ * Transactions the change feed did not push, from {@code fromSequence} (inclusive) to {@code toSequence} (exclusive).
+ * {@code toSequence} is {@code null} when the subscriber was disconnected, it can resume at {@code fromSequence}.
+ */
+public record FeedGapResponse(
+        long fromSequence,
+        Long toSequence
+) {
+}
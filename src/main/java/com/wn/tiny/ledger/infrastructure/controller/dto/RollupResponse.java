@@ -0,0 +1,27 @@
+package com.wn.tiny.ledger.infrastructure.controller.dto;
+
+import com.wn.tiny.ledger.domain.TransactionRollup;
+import com.wn.tiny.ledger.domain.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record RollupResponse(
+        LocalDateTime start,
+        TransactionType type,
+        long count,
+        BigDecimal total,
+        BigDecimal min,
+        BigDecimal max
+) {
+    public static RollupResponse from(TransactionRollup rollup) {
+        return new RollupResponse(
+                rollup.start(),
+                rollup.type(),
+                rollup.count(),
+                rollup.total().toBigDecimal(),
+                rollup.min().toBigDecimal(),
+                rollup.max().toBigDecimal()
+        );
+    }
+}
@@ -0,0 +1,19 @@
+package com.wn.tiny.ledger.infrastructure.controller.dto;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.math.BigDecimal;
+
+/**
+ * A transaction pushed by the change feed, with its sequence number and the balance of the account after it.
+ */
+public record TransactionEventResponse(
+        long sequence,
+        TransactionResponse transaction,
+        BigDecimal balance
+) {
+    public static TransactionEventResponse from(long sequence, Transaction transaction, Money balance) {
+        return new TransactionEventResponse(sequence, TransactionResponse.from(transaction), balance.toBigDecimal());
+    }
+}
@@ -15,7 +15,7 @@ public record TransactionResponse(
     public static TransactionResponse from(Transaction transaction) {
         return new TransactionResponse(
                 transaction.getId(),
-                transaction.getAmount(),
+                transaction.getAmount().toBigDecimal(),
                 transaction.getType(),
                 transaction.getTimestamp()
         );
@@ -0,0 +1,29 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory state of a single account. Every account owns its balance cell, log and index, so writes to different
+ * accounts never touch the same memory or lock.
+ */
+class AccountLedger {
+
+    /* balance in minor units of Money.LEDGER_SCALE, of the durable transactions published to readers */
+    final AtomicLong balance = new AtomicLong();
+    /* The log also finds its transactions by id */
+    final TransactionLog transactions;
+    /* Updated under the transactions lock, along with the log */
+    final TransactionRollups rollups = new TransactionRollups();
+
+    /* Guarded by the transactions lock: balance after the last journaled transaction and its journal ticket */
+    long journaledBalance;
+    long journalTicket;
+    /* Guarded by the transactions lock: writes journaled but not durable yet, in journal order */
+    final Deque<JournaledWrite> unpublished = new ArrayDeque<>();
+
+    AccountLedger(TransactionLog transactions) {
+        this.transactions = transactions;
+    }
+}
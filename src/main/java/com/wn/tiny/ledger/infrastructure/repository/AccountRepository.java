@@ -1,55 +1,355 @@
 package com.wn.tiny.ledger.infrastructure.repository;
 
+import com.wn.tiny.ledger.domain.HistorySlice;
 import com.wn.tiny.ledger.domain.Transaction;
 import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.RollupPeriod;
 import com.wn.tiny.ledger.domain.TransactionPersistence;
-import com.wn.tiny.ledger.domain.TransactionType;
-import org.springframework.stereotype.Repository;
+import com.wn.tiny.ledger.domain.TransactionRollup;
 
-import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.function.Predicate;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
 
-@Repository
 public class AccountRepository implements TransactionPersistence {
 
-    /* A thread-safe objects to store the transactions and balance in memory */
-    private final List<Transaction> transactions = new CopyOnWriteArrayList<>();
-    private final AtomicReference<BigDecimal> balance = new AtomicReference<>(BigDecimal.ZERO);
+    /* A thread-safe map of accounts, each one holding its own transactions and balance in memory. Only replaced as a
+       whole, by a follower loading a new snapshot of its leader */
+    private volatile Map<String, AccountLedger> accounts = new ConcurrentHashMap<>();
+    private final TransactionJournal journal;
+    private final StorageEngine storageEngine;
+    /* Where the columnar history is sealed once over its hot budget, null to keep it all in memory */
+    private final SegmentStore segmentStore;
+    /* Writes that took the lock of their account, and the time they waited for it while another write held it */
+    private final LongAdder lockAcquisitions = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+
+    public AccountRepository() {
+        this(TransactionJournal.NONE);
+    }
+
+    public AccountRepository(TransactionJournal journal) {
+        this(journal, StorageEngine.OBJECTS);
+    }
+
+    public AccountRepository(TransactionJournal journal, StorageEngine storageEngine) {
+        this.journal = journal;
+        this.storageEngine = storageEngine;
+        this.segmentStore = null;
+    }
+
+    /**
+     * Keeps the history with the {@link StorageEngine#COLUMNAR} engine and seals its oldest chunks into the segment
+     * store once they take more than its hot budget.
+     */
+    public AccountRepository(TransactionJournal journal, SegmentStore segmentStore) {
+        this.journal = journal;
+        this.storageEngine = StorageEngine.COLUMNAR;
+        this.segmentStore = segmentStore;
+    }
 
     @Override
-    public void addTransaction(Transaction transaction, Predicate<BigDecimal> balanceValidation) {
-        balance.updateAndGet(currentBalance -> {
+    public void addTransaction(String accountId, Transaction transaction, LongPredicate balanceValidation) {
+        addTransactions(accountId, List.of(transaction), balanceValidation);
+    }
 
-            if (!balanceValidation.test(currentBalance)) {
+    @Override
+    public void addTransactions(String accountId, List<Transaction> transactions, LongPredicate balanceValidation) {
+        publish(journal(accountId, transactions, balanceValidation));
+    }
+
+    /**
+     * Validates the transactions against the balance of the account and hands them to the journal, as one step under
+     * the account lock. Readers do not see them until {@link #publish} found them durable. Does not wait for the
+     * journal.
+     * <p>
+     * The balance validated against includes the writes journaled but not durable yet: when one of them fails, the
+     * journal fails every write after it too, so no write is ever published on funds that were not.
+     *
+     * @return the write to pass to {@link #publish}
+     * @throws InvalidTransactionException when the validation rejects the balance, nothing is journaled then
+     */
+    JournaledWrite journal(String accountId, List<Transaction> transactions, LongPredicate balanceValidation) {
+        final var account = accounts.computeIfAbsent(accountId, this::newAccount);
+        long delta = 0;
+        for (var transaction : transactions) {
+            delta = Money.addExact(delta, transaction.getBalanceDelta());
+        }
+
+        // the journal must see the transactions of the account in log order
+        final long waitStart = System.nanoTime();
+        synchronized (account.transactions) {
+            lockAcquired(waitStart);
+            if (!balanceValidation.test(account.journaledBalance)) {
                 throw new InvalidTransactionException("Insufficient funds for withdrawal");
             }
+            final long balanceAfter = Money.addExact(account.journaledBalance, delta);
+            final long ticket = journal.append(accountId, transactions);
+            final var write = new JournaledWrite(account, transactions, ticket, delta, balanceAfter);
+            account.unpublished.addLast(write);
+            account.journaledBalance = balanceAfter;
+            account.journalTicket = ticket;
+            return write;
+        }
+    }
+
+    /**
+     * Waits until the journal made the write durable, then appends it to the log and balance of its account, along
+     * with every write of the account journaled before it. When the journal fails, the write is dropped and never
+     * seen by readers.
+     */
+    void publish(JournaledWrite write) {
+        final var account = write.account();
+        try {
+            journal.awaitDurable(write.ticket());
+        } catch (RuntimeException e) {
+            synchronized (account.transactions) {
+                // the journal fails in ticket order, the writes journaled after this one fail as well
+                if (account.unpublished.remove(write)) {
+                    account.journaledBalance -= write.delta();
+                }
+            }
+            throw e;
+        }
 
-            return transaction.getType() == TransactionType.DEPOSIT
-                    ? currentBalance.add(transaction.getAmount())
-                    : currentBalance.subtract(transaction.getAmount());
+        final long waitStart = System.nanoTime();
+        synchronized (account.transactions) {
+            lockAcquired(waitStart);
+            // durable in ticket order, the writes journaled before this one are durable too
+            JournaledWrite next;
+            while ((next = account.unpublished.peekFirst()) != null && next.ticket() <= write.ticket()) {
+                account.unpublished.removeFirst();
+                account.transactions.appendAll(next.transactions());
+                account.transactions.indexIds(next.transactions());
+                account.rollups.addAll(next.transactions());
+                account.balance.set(next.balanceAfter());
+                if (next == write) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Captures a consistent state of every account. Each account is locked only long enough to read the position of
+     * its log, its writes keep going while the others are captured and while the snapshot is being stored.
+     * <p>
+     * The state includes the writes journaled but not durable yet, the caller must wait for the journal before it
+     * hands the snapshot on.
+     */
+    public List<AccountSnapshot> snapshot() {
+        final List<AccountSnapshot> snapshots = new ArrayList<>(accounts.size());
+        accounts.forEach((accountId, account) -> {
+            final int size;
+            final long balance;
+            final long ticket;
+            final List<Transaction> unpublished = new ArrayList<>();
+            synchronized (account.transactions) {
+                size = account.transactions.size();
+                balance = account.journaledBalance;
+                ticket = account.journalTicket;
+                for (var write : account.unpublished) {
+                    unpublished.addAll(write.transactions());
+                }
+            }
+            List<Transaction> transactions = account.transactions.snapshot(0, size);
+            if (!unpublished.isEmpty()) {
+                transactions = new ArrayList<>(transactions);
+                transactions.addAll(unpublished);
+            }
+            snapshots.add(new AccountSnapshot(accountId, balance, ticket, transactions));
         });
+        return snapshots;
+    }
+
+    /**
+     * Loads an account from a snapshot during startup. Must not be called concurrently with {@link #addTransaction}.
+     */
+    public void restore(AccountSnapshot snapshot) {
+        restore(accounts, snapshot);
+    }
+
+    /**
+     * Replaces every account with the ones of the snapshot, for a follower loading a new snapshot of its leader. The
+     * accounts are loaded apart and swapped in at once, a reader sees either the previous accounts or the new ones,
+     * never a part of them. Must not be called concurrently with {@link #addTransaction}.
+     */
+    public void replaceAll(List<AccountSnapshot> snapshots) {
+        final Map<String, AccountLedger> replacement = new ConcurrentHashMap<>();
+        for (var snapshot : snapshots) {
+            restore(replacement, snapshot);
+        }
+        final var replaced = accounts;
+        accounts = replacement;
+        if (segmentStore != null) {
+            replaced.forEach((accountId, account) -> segmentStore.release(accountId, account.transactions));
+        }
+    }
+
+    private void restore(Map<String, AccountLedger> into, AccountSnapshot snapshot) {
+        final var account = into.computeIfAbsent(snapshot.accountId(), this::newAccount);
+
+        for (var transaction : snapshot.transactions()) {
+            account.transactions.append(transaction);
+            account.rollups.add(transaction);
+        }
+        account.transactions.indexIds(snapshot.transactions());
+        account.balance.set(snapshot.balance());
+        account.journaledBalance = snapshot.balance();
+        account.journalTicket = snapshot.journalTicket();
+    }
+
+    /**
+     * Re-applies transactions read back from storage during startup, or received from the leader on a follower,
+     * without validating the balance and without sending them to the journal again. Must not be called concurrently
+     * with {@link #addTransaction}.
+     *
+     * @param journalTicket the ticket the journal returned when the transactions were recorded
+     */
+    public void restore(long journalTicket, String accountId, List<Transaction> transactions) {
+        final var account = accounts.computeIfAbsent(accountId, this::newAccount);
+
+        long balance = account.journaledBalance;
+        for (var transaction : transactions) {
+            balance = Money.addExact(balance, transaction.getBalanceDelta());
+        }
+        account.transactions.appendAll(transactions);
+        account.transactions.indexIds(transactions);
+        account.rollups.addAll(transactions);
+        account.balance.set(balance);
+        account.journaledBalance = balance;
+        account.journalTicket = journalTicket;
+    }
+
+    /**
+     * @return the journal ticket of the last transaction of the account, 0 when there is none
+     */
+    public long getJournalTicket(String accountId) {
+        final var account = accounts.get(accountId);
+        if (account == null) {
+            return 0;
+        }
+        synchronized (account.transactions) {
+            return account.journalTicket;
+        }
+    }
+
+    /**
+     * @return the number of times a write took the lock of its account, to journal or to publish
+     */
+    public long getLockAcquisitions() {
+        return lockAcquisitions.sum();
+    }
+
+    /**
+     * @return the total time writes waited for the lock of their account, in nanoseconds
+     */
+    public double getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+    /**
+     * @return the rough heap used by the transactions held in memory, over all accounts
+     */
+    public long getEstimatedHistoryBytes() {
+        return segmentStore != null ? segmentStore.getHotBytes()
+                : getTransactionCount() * storageEngine.estimatedBytesPerTransaction();
+    }
+
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    /**
+     * @return the number of transactions held in memory, over all accounts
+     */
+    public long getTransactionCount() {
+        long count = 0;
+        for (var account : accounts.values()) {
+            count += account.transactions.size();
+        }
+        return count;
+    }
+
+    private void lockAcquired(long waitStart) {
+        lockAcquisitions.increment();
+        lockWaitNanos.add(System.nanoTime() - waitStart);
+    }
+
+    private AccountLedger newAccount(String accountId) {
+        return new AccountLedger(segmentStore != null ? segmentStore.newLog(accountId) : storageEngine.newLog());
+    }
 
-        transactions.add(transaction);
+    @Override
+    public Money getBalance(String accountId) {
+        final var account = accounts.get(accountId);
+        return account == null ? Money.ZERO : Money.ofMinor(account.balance.get());
+    }
+
+    @Override
+    public Money getBalance(String accountId, LocalDateTime asOf) {
+        final var account = accounts.get(accountId);
+        return account == null ? Money.ZERO : Money.ofMinor(account.transactions.balanceAsOf(asOf));
+    }
+
+    @Override
+    public Money getBalanceBefore(String accountId, long sequence) {
+        final var account = accounts.get(accountId);
+        return account == null ? Money.ZERO
+                : Money.ofMinor(account.transactions.balanceBefore((int) Math.min(sequence, Integer.MAX_VALUE)));
+    }
+
+    @Override
+    public long getHistorySize(String accountId) {
+        final var account = accounts.get(accountId);
+        return account == null ? 0 : account.transactions.size();
+    }
+
+    @Override
+    public Optional<Transaction> findTransaction(String accountId, String id) {
+        final var account = accounts.get(accountId);
+        return account == null ? Optional.empty() : Optional.ofNullable(account.transactions.findById(id));
+    }
+
+    @Override
+    public List<Transaction> getTransactionHistory(String accountId) {
+        final var account = accounts.get(accountId);
+        return account == null ? List.of() : account.transactions.snapshot();
     }
 
     @Override
-    public BigDecimal getBalance() {
-        return balance.get();
+    public List<Transaction> getTransactionHistory(String accountId, long fromSequence, int limit) {
+        final var account = accounts.get(accountId);
+        if (account == null || fromSequence >= account.transactions.size()) {
+            return List.of();
+        }
+        return account.transactions.snapshot((int) fromSequence, limit);
     }
 
     @Override
-    public Optional<Transaction> findTransaction(String id) {
-        return transactions.stream()
-                .filter(transaction -> transaction.getId().equals(id))
-                .findFirst();
+    public HistorySlice getTransactionHistory(String accountId, LocalDateTime from, LocalDateTime to, long fromSequence,
+                                              int limit) {
+        final var account = accounts.get(accountId);
+        if (account == null || fromSequence >= account.transactions.size()) {
+            return new HistorySlice(List.of(), HistorySlice.NO_MORE);
+        }
+        return account.transactions.findByTime(from, to, (int) fromSequence, limit);
     }
 
     @Override
-    public List<Transaction> getTransactionHistory() {
-        return List.copyOf(transactions);
+    public List<TransactionRollup> getRollups(String accountId, RollupPeriod period, LocalDateTime from,
+                                              LocalDateTime to) {
+        final var account = accounts.get(accountId);
+        return account == null ? List.of() : account.rollups.find(period, from, to);
     }
 }
@@ -0,0 +1,15 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.util.List;
+
+/**
+ * Consistent point-in-time state of an account: its history up to a position of the log, the balance after the last
+ * of those transactions and the journal ticket of that transaction.
+ *
+ * @param balance       balance in minor units of {@link com.wn.tiny.ledger.domain.Money#LEDGER_SCALE}
+ * @param journalTicket ticket returned by the journal for the last transaction, 0 when it was never journaled
+ */
+public record AccountSnapshot(String accountId, long balance, long journalTicket, List<Transaction> transactions) {
+}
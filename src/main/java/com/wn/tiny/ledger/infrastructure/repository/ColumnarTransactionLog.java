@@ -0,0 +1,292 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Log that keeps every transaction in parallel primitive columns instead of as an object: the balance delta, the type,
+ * the time key and the id packed as the number of a {@link SnowflakeIdGenerator}, 25 bytes per entry. Reads build a
+ * new {@link Transaction} from the columns every time.
+ * <p>
+ * Ids are not indexed apart from the entries. The ids of a generator increase with time, so like the timestamps they
+ * are sorted in the log except for concurrent writers overtaking each other: the log keeps the running maximum id at
+ * the end of every block of {@value #MAX_ID_BLOCK_SIZE} entries and the largest lag of an id behind it, and
+ * binary-searches an id the way {@link #findByTime} searches a time.
+ * <p>
+ * A transaction the columns cannot hold, with an id of another format (such as the UUIDs of older journals) or a
+ * timestamp out of the range of the time keys, is kept aside as an object and read back as is.
+ * <p>
+ * With a {@link SegmentStore}, the oldest complete chunks can be sealed into segment files and evicted from memory,
+ * always a prefix of the log. Reads of an evicted chunk load it back through the store.
+ */
+class ColumnarTransactionLog extends TransactionLog {
+
+    /* Type of an entry kept aside as an object */
+    private static final byte BOXED = -1;
+    /* Id of an entry whose id does not pack into a number, never the number of an id */
+    private static final long NO_ID = -1;
+    private static final TransactionType[] TYPES = TransactionType.values();
+    /* Entries covered by a running maximum id, an id lookup reads at most one block more than the lag */
+    private static final int MAX_ID_BLOCK_SIZE = 64;
+
+    private final int idBlockShift;
+    private final SegmentStore segmentStore;
+    /* An evicted chunk is null, it is then found in the segment recorded for it */
+    private volatile Chunk[] chunks = new Chunk[1];
+    /* Guarded by the log lock, and published to readers by the chunk directory */
+    private SegmentStore.Segment[] segments = new SegmentStore.Segment[1];
+    /* Chunks sealed into segments, the first ones of the log */
+    private volatile int sealedChunks;
+    /* Running maximum of the packed ids up to the last entry written to each block, grown with the chunk directory */
+    private volatile long[] blockMaxIds;
+    /* Largest an id was behind the running maximum when it was appended, only grows */
+    private volatile long maxIdLag;
+    /* Guarded by the log lock */
+    private long maxId = Long.MIN_VALUE;
+
+    /* Entries the columns cannot hold, by sequence, and the sequence of those whose id does not pack */
+    private final Map<Integer, Transaction> boxed = new ConcurrentHashMap<>();
+    private final Map<String, Integer> boxedIds = new ConcurrentHashMap<>();
+
+    /**
+     * Columns of the entries of a chunk, never written again once the chunk is complete.
+     */
+    static final class Chunk {
+
+        final long[] deltas;
+        final byte[] types;
+        final long[] times;
+        final long[] ids;
+
+        Chunk(int size) {
+            this(new long[size], new byte[size], new long[size], new long[size]);
+        }
+
+        Chunk(long[] deltas, byte[] types, long[] times, long[] ids) {
+            this.deltas = deltas;
+            this.types = types;
+            this.times = times;
+            this.ids = ids;
+        }
+
+        /**
+         * @return the rough heap footprint of a chunk holding {@code size} entries
+         */
+        static long bytes(int size) {
+            return 25L * size + 4 * 16 + 24;
+        }
+    }
+
+    ColumnarTransactionLog() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    ColumnarTransactionLog(int chunkSize) {
+        this(chunkSize, null);
+    }
+
+    /**
+     * @param segmentStore the store the chunks are sealed into, {@code null} to keep every chunk in memory
+     */
+    ColumnarTransactionLog(int chunkSize, SegmentStore segmentStore) {
+        super(chunkSize);
+        this.segmentStore = segmentStore;
+        this.idBlockShift = Math.min(chunkShift, Integer.numberOfTrailingZeros(MAX_ID_BLOCK_SIZE));
+        this.blockMaxIds = new long[1 << (chunkShift - idBlockShift)];
+    }
+
+    @Override
+    void growChunks(int length) {
+        segments = Arrays.copyOf(segments, length);
+        chunks = Arrays.copyOf(chunks, length);
+        blockMaxIds = Arrays.copyOf(blockMaxIds, length << (chunkShift - idBlockShift));
+    }
+
+    @Override
+    void storeEntry(int index, Transaction transaction, long timeKey) {
+        final int chunkIndex = index >>> chunkShift;
+        final int offset = index & chunkMask;
+        Chunk chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            chunk = new Chunk(chunkMask + 1);
+            chunks[chunkIndex] = chunk;
+            if (segmentStore != null) {
+                segmentStore.allocated(Chunk.bytes(chunkMask + 1));
+            }
+        }
+
+        final long id = SnowflakeIdGenerator.parse(transaction.getId());
+        final boolean boxedEntry = id == NO_ID || timeKey == Long.MIN_VALUE || timeKey == Long.MAX_VALUE;
+        if (boxedEntry) {
+            boxed.put(index, transaction);
+        }
+        if (id == NO_ID) {
+            boxedIds.put(transaction.getId(), index);
+        }
+        chunk.deltas[offset] = transaction.getBalanceDelta();
+        chunk.types[offset] = boxedEntry ? BOXED : (byte) transaction.getType().ordinal();
+        chunk.times[offset] = timeKey;
+        chunk.ids[offset] = id;
+
+        if (id > maxId) {
+            maxId = id;
+        } else if (id != NO_ID && maxId - id > maxIdLag) {
+            maxIdLag = maxId - id;
+        }
+        blockMaxIds[index >>> idBlockShift] = maxId;
+    }
+
+    @Override
+    Transaction read(int index) {
+        final var chunk = chunk(index >>> chunkShift);
+        final int offset = index & chunkMask;
+        final byte type = chunk.types[offset];
+        if (type == BOXED) {
+            return boxed.get(index);
+        }
+        final long delta = chunk.deltas[offset];
+        final long time = chunk.times[offset];
+        return new Transaction(SnowflakeIdGenerator.encode(chunk.ids[offset]), Money.ofMinor(Math.abs(delta)),
+                TYPES[type], LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1_000_000_000L),
+                (int) Math.floorMod(time, 1_000_000_000L), ZoneOffset.UTC));
+    }
+
+    @Override
+    long timeKeyAt(int index) {
+        return chunk(index >>> chunkShift).times[index & chunkMask];
+    }
+
+    @Override
+    long balanceDeltaAt(int index) {
+        return chunk(index >>> chunkShift).deltas[index & chunkMask];
+    }
+
+    /* Reads a chunk holding published entries, from memory or from its segment once evicted */
+    private Chunk chunk(int chunkIndex) {
+        // volatile read, an evicted chunk is seen along with its segment
+        final Chunk[] directory = chunks;
+        final var chunk = directory[chunkIndex];
+        return chunk != null ? chunk : segmentStore.read(this, chunkIndex, segments[chunkIndex]);
+    }
+
+    /**
+     * @return the number of chunks sealed into segments, the first ones of the log
+     */
+    int sealedChunks() {
+        return sealedChunks;
+    }
+
+    /**
+     * @return the number of complete chunks, the only ones that can be sealed
+     */
+    int completeChunks() {
+        return size() >>> chunkShift;
+    }
+
+    /**
+     * Reads a complete chunk that is not sealed yet, for the segment store.
+     */
+    Chunk hotChunk(int chunkIndex) {
+        return chunks[chunkIndex];
+    }
+
+    /**
+     * @return the rough heap used by the chunks of the log held in memory
+     */
+    synchronized long hotBytes() {
+        long bytes = 0;
+        for (var chunk : chunks) {
+            if (chunk != null) {
+                bytes += Chunk.bytes(chunkMask + 1);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the segments the sealed chunks of the log are in, oldest first
+     */
+    synchronized List<SegmentStore.Segment> sealedSegments() {
+        final List<SegmentStore.Segment> sealed = new ArrayList<>();
+        for (int chunkIndex = 0; chunkIndex < sealedChunks; chunkIndex++) {
+            if (sealed.isEmpty() || sealed.get(sealed.size() - 1) != segments[chunkIndex]) {
+                sealed.add(segments[chunkIndex]);
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Evicts the chunks from {@code from} to {@code to} (exclusive), now sealed into the segment, from memory. They
+     * must follow the chunks already sealed.
+     */
+    synchronized void evict(int from, int to, SegmentStore.Segment segment) {
+        if (from != sealedChunks || to > completeChunks()) {
+            throw new IllegalStateException("Only the complete chunks following the sealed ones can be evicted");
+        }
+        final Chunk[] directory = Arrays.copyOf(chunks, chunks.length);
+        for (int chunkIndex = from; chunkIndex < to; chunkIndex++) {
+            segments[chunkIndex] = segment;
+            directory[chunkIndex] = null;
+        }
+        // publishes the segments along with the evicted chunks
+        chunks = directory;
+        sealedChunks = to;
+    }
+
+    @Override
+    Transaction findById(String id) {
+        final long key = SnowflakeIdGenerator.parse(id);
+        // volatile read first, the block ids and lag below are at least as recent as the entries below the size
+        final int end = size();
+        if (key == NO_ID) {
+            final Integer index = boxedIds.get(id);
+            return index == null || index >= end ? null : read(index);
+        }
+        final long lag = maxIdLag;
+        final long[] maxIds = blockMaxIds;
+        if (end == 0) {
+            return null;
+        }
+        // an id is at most lag behind the running maximum, so once the maximum reaches this the id is not in the log
+        final long stopId = key > Long.MAX_VALUE - lag ? Long.MAX_VALUE : key + lag;
+
+        // first block whose running maximum reaches the id, every entry before it has a lower id
+        int low = 0;
+        int high = (end - 1) >>> idBlockShift;
+        if (maxIds[high] < key) {
+            return null;
+        }
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (maxIds[middle] >= key) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        long runningMax = low == 0 ? Long.MIN_VALUE : maxIds[low - 1];
+        for (int index = low << idBlockShift; index < end; index++) {
+            final long entryId = chunk(index >>> chunkShift).ids[index & chunkMask];
+            if (entryId == key) {
+                return read(index);
+            }
+            runningMax = Math.max(runningMax, entryId);
+            if (runningMax > stopId) {
+                break;
+            }
+        }
+        return null;
+    }
+}
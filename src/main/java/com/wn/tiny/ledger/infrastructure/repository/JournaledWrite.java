@@ -0,0 +1,15 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.util.List;
+
+/**
+ * Transactions handed to the journal and waiting to be durable before readers see them.
+ *
+ * @param delta        the balance change of the transactions
+ * @param balanceAfter the journaled balance of the account once they are applied
+ */
+record JournaledWrite(AccountLedger account, List<Transaction> transactions, long ticket, long delta,
+                      long balanceAfter) {
+}
@@ -0,0 +1,7 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+public class LedgerStorageException extends RuntimeException {
+    public LedgerStorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,68 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Log that keeps the appended transactions themselves, indexed by id in a hash map. Reads return the very objects
+ * that were appended.
+ */
+class ObjectTransactionLog extends TransactionLog {
+
+    private volatile Transaction[][] chunks = new Transaction[1][];
+    private final Map<String, Transaction> transactionsById = new ConcurrentHashMap<>();
+
+    ObjectTransactionLog() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    ObjectTransactionLog(int chunkSize) {
+        super(chunkSize);
+    }
+
+    @Override
+    void growChunks(int length) {
+        chunks = Arrays.copyOf(chunks, length);
+    }
+
+    @Override
+    void storeEntry(int index, Transaction transaction, long timeKey) {
+        final Transaction[][] directory = chunks;
+        final int chunkIndex = index >>> chunkShift;
+        if (directory[chunkIndex] == null) {
+            directory[chunkIndex] = new Transaction[chunkMask + 1];
+        }
+        directory[chunkIndex][index & chunkMask] = transaction;
+    }
+
+    @Override
+    Transaction read(int index) {
+        return chunks[index >>> chunkShift][index & chunkMask];
+    }
+
+    @Override
+    long timeKeyAt(int index) {
+        return timeKey(read(index).getTimestamp());
+    }
+
+    @Override
+    long balanceDeltaAt(int index) {
+        return read(index).getBalanceDelta();
+    }
+
+    @Override
+    Transaction findById(String id) {
+        return transactionsById.get(id);
+    }
+
+    @Override
+    void indexIds(List<Transaction> transactions) {
+        for (var transaction : transactions) {
+            transactionsById.put(transaction.getId(), transaction);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Bounds the heap used by the history of the {@link ColumnarTransactionLog}s it creates: once their chunks take more
+ * than the hot budget, the oldest complete chunks are sealed into immutable segment files and evicted from memory by a
+ * background thread. The last chunk of every log always stays in memory.
+ * <p>
+ * Segments are memory-mapped and read back a chunk at a time. The chunks read last are kept in a least recently used
+ * cache, so reading the same part of an old history again does not decode it again. Layout of a segment:
+ * <pre>
+ * int    magic, then int version
+ * int    chunk size, then int number of chunks
+ * long   offset of each chunk in the file, then the offset of the end of the last chunk
+ * for each chunk, the entries of each column in turn:
+ *   varint zigzag balance delta
+ *   byte   type
+ *   varint zigzag time key, minus the time key of the previous entry
+ *   varint zigzag id, minus the id of the previous entry
+ * </pre>
+ * Entries of a log are mostly sorted by time and id, so the differences are small and a chunk takes about a third of
+ * its size in memory. Segments only hold a copy of what the journal and the snapshots store durably, they are not
+ * synced and are deleted when the store is closed or opened again.
+ */
+public class SegmentStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+
+    private static final int MAGIC = 0x544C5347; // "TLSG"
+    private static final int VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    /* Most chunks sealed into one segment */
+    private static final int MAX_SEGMENT_CHUNKS = 64;
+    /* Longest varint of a long, and the longest encoding of an entry */
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final int MAX_ENTRY_BYTES = 3 * MAX_VARINT_BYTES + 1;
+    /* How often the sealer checks the budget when no chunk was allocated */
+    private static final long IDLE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * A sealed segment file, mapped in memory, holding the chunks from {@code firstChunk} of a log.
+     */
+    record Segment(Path file, MappedByteBuffer buffer, int firstChunk, int chunkCount) {
+    }
+
+    private record ChunkKey(ColumnarTransactionLog log, int chunkIndex) {
+    }
+
+    private final Path directory;
+    private final long hotBudget;
+    private final long cacheBudget;
+    private final Map<String, ColumnarTransactionLog> logs = new ConcurrentHashMap<>();
+    /* Taken while sealing and while releasing a log, so a log is never sealed once released */
+    private final Object sealLock = new Object();
+    /* Guarded by itself, in access order */
+    private final LinkedHashMap<ChunkKey, ColumnarTransactionLog.Chunk> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private final AtomicLong hotBytes = new AtomicLong();
+    private final AtomicLong segmentBytes = new AtomicLong();
+    private final AtomicLong segmentCount = new AtomicLong();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private volatile Thread sealer;
+    private volatile boolean closed;
+
+    SegmentStore(Path directory, long hotBudget, long cacheBudget) {
+        if (hotBudget < 0 || cacheBudget < 0) {
+            throw new IllegalArgumentException("Hot budget and cache size must not be negative");
+        }
+        this.directory = directory;
+        this.hotBudget = hotBudget;
+        this.cacheBudget = cacheBudget;
+    }
+
+    /**
+     * Opens the store in the directory, deleting the segments of a previous run, and starts sealing chunks.
+     *
+     * @param hotBudget   bytes of history kept in memory before the oldest chunks are sealed
+     * @param cacheBudget bytes of sealed chunks kept in memory once read
+     */
+    public static SegmentStore open(Path directory, long hotBudget, long cacheBudget) throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (var file : files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                Files.delete(file);
+            }
+        }
+        final var store = new SegmentStore(directory, hotBudget, cacheBudget);
+        final var thread = new Thread(store::sealLoop, "ledger-segment-sealer");
+        thread.setDaemon(true);
+        store.sealer = thread;
+        thread.start();
+        return store;
+    }
+
+    /**
+     * Creates the log of an account, whose chunks count against the hot budget.
+     */
+    TransactionLog newLog(String accountId) {
+        return newLog(accountId, TransactionLog.DEFAULT_CHUNK_SIZE);
+    }
+
+    ColumnarTransactionLog newLog(String accountId, int chunkSize) {
+        final var log = new ColumnarTransactionLog(chunkSize, this);
+        logs.put(accountId, log);
+        return log;
+    }
+
+    /**
+     * Forgets a log that was replaced, along with the heap its chunks were counted for, its segment files and the
+     * chunks of it in the cache. Readers still holding the log can keep reading it.
+     */
+    void release(String accountId, TransactionLog log) {
+        if (!(log instanceof ColumnarTransactionLog columnar)) {
+            return;
+        }
+        synchronized (sealLock) {
+            logs.remove(accountId, columnar);
+            hotBytes.addAndGet(-columnar.hotBytes());
+            for (var segment : columnar.sealedSegments()) {
+                segmentBytes.addAndGet(-segment.buffer().capacity());
+                try {
+                    // still mapped for the readers of the log, deleting the file is fine on the platforms we run on
+                    Files.deleteIfExists(segment.file());
+                } catch (IOException e) {
+                    logger.warn("Failed to delete the segment {} of a released log", segment.file(), e);
+                }
+            }
+        }
+        synchronized (cache) {
+            for (var cached = cache.entrySet().iterator(); cached.hasNext(); ) {
+                final var entry = cached.next();
+                if (entry.getKey().log() == columnar) {
+                    cachedBytes -= ColumnarTransactionLog.Chunk.bytes(entry.getValue().deltas.length);
+                    cached.remove();
+                }
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the rough heap used by the chunks held in memory, over all logs
+     */
+    public long getHotBytes() {
+        return hotBytes.get();
+    }
+
+    /**
+     * @return the size of the segment files
+     */
+    public long getSegmentBytes() {
+        return segmentBytes.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /* Called by a log, with its lock held, when it allocates a chunk */
+    void allocated(long bytes) {
+        if (hotBytes.addAndGet(bytes) > hotBudget) {
+            LockSupport.unpark(sealer);
+        }
+    }
+
+    /**
+     * Reads an evicted chunk of the log from its segment, or from the cache when it was read recently.
+     */
+    ColumnarTransactionLog.Chunk read(ColumnarTransactionLog log, int chunkIndex, Segment segment) {
+        final var key = new ChunkKey(log, chunkIndex);
+        synchronized (cache) {
+            final var cached = cache.get(key);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached;
+            }
+        }
+        cacheMisses.increment();
+
+        // decoded outside of the lock, concurrent readers of the same chunk may both decode it
+        final var chunk = decode(segment, chunkIndex);
+        final long bytes = ColumnarTransactionLog.Chunk.bytes(chunk.deltas.length);
+        synchronized (cache) {
+            if (cache.put(key, chunk) == null) {
+                cachedBytes += bytes;
+            }
+            for (var eldest = cache.entrySet().iterator(); cachedBytes > cacheBudget && eldest.hasNext(); ) {
+                cachedBytes -= ColumnarTransactionLog.Chunk.bytes(eldest.next().getValue().deltas.length);
+                eldest.remove();
+            }
+        }
+        return chunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(sealer);
+        final var thread = sealer;
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // mapped segments are only unmapped once collected, deleting the files is fine on the platforms we run on
+        try (Stream<Path> files = Files.list(directory)) {
+            for (var file : files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void sealLoop() {
+        while (!closed) {
+            try {
+                if (hotBytes.get() <= hotBudget || !sealOldest()) {
+                    LockSupport.parkNanos(this, IDLE_CHECK_NANOS);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Sealing chunks into {} failed, the history stays in memory", directory, e);
+                LockSupport.parkNanos(this, IDLE_CHECK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Seals the oldest complete chunks that are still in memory, over all logs, into a segment and evicts them.
+     *
+     * @return {@code false} when there was no complete chunk to seal
+     */
+    boolean sealOldest() throws IOException {
+        synchronized (sealLock) {
+            return sealOldestLocked();
+        }
+    }
+
+    private boolean sealOldestLocked() throws IOException {
+        ColumnarTransactionLog oldest = null;
+        long oldestTime = Long.MAX_VALUE;
+        for (var log : logs.values()) {
+            final int first = log.sealedChunks();
+            if (first < log.completeChunks() && (oldest == null || log.chunkMaxTime(first) < oldestTime)) {
+                oldest = log;
+                oldestTime = log.chunkMaxTime(first);
+            }
+        }
+        if (oldest == null) {
+            return false;
+        }
+
+        final int chunkSize = oldest.chunkMask + 1;
+        final long chunkBytes = ColumnarTransactionLog.Chunk.bytes(chunkSize);
+        final long overBudget = Math.max(hotBytes.get() - hotBudget, chunkBytes);
+        final int first = oldest.sealedChunks();
+        final int count = (int) Math.min(Math.min(oldest.completeChunks() - first, MAX_SEGMENT_CHUNKS),
+                (overBudget + chunkBytes - 1) / chunkBytes);
+
+        final var segment = write(oldest, first, count);
+        oldest.evict(first, first + count, segment);
+        hotBytes.addAndGet(-chunkBytes * count);
+        return true;
+    }
+
+    private Segment write(ColumnarTransactionLog log, int first, int count) throws IOException {
+        final int chunkSize = log.chunkMask + 1;
+        final int header = 4 * Integer.BYTES + (count + 1) * Long.BYTES;
+        final ByteBuffer buffer = ByteBuffer.allocate(header + count * chunkSize * MAX_ENTRY_BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(chunkSize).putInt(count);
+        buffer.position(header);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(4 * Integer.BYTES + i * Long.BYTES, buffer.position());
+            encode(log.hotChunk(first + i), buffer);
+        }
+        buffer.putLong(4 * Integer.BYTES + count * Long.BYTES, buffer.position());
+        buffer.flip();
+
+        final var file = directory.resolve(String.format("segment-%012d%s", segmentCount.incrementAndGet(),
+                SEGMENT_SUFFIX));
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            segmentBytes.addAndGet(channel.size());
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), first, count);
+        }
+    }
+
+    private static void encode(ColumnarTransactionLog.Chunk chunk, ByteBuffer buffer) {
+        for (long delta : chunk.deltas) {
+            putVarint(buffer, zigzag(delta));
+        }
+        buffer.put(chunk.types);
+        long previous = 0;
+        for (long time : chunk.times) {
+            putVarint(buffer, zigzag(time - previous));
+            previous = time;
+        }
+        previous = 0;
+        for (long id : chunk.ids) {
+            putVarint(buffer, zigzag(id - previous));
+            previous = id;
+        }
+    }
+
+    private static ColumnarTransactionLog.Chunk decode(Segment segment, int chunkIndex) {
+        final var mapped = segment.buffer();
+        final int chunkSize = mapped.getInt(2 * Integer.BYTES);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(Integer.BYTES) != VERSION) {
+            throw new UncheckedIOException(new IOException("Segment " + segment.file() + " is corrupted"));
+        }
+        final int position = (int) mapped.getLong(4 * Integer.BYTES + (chunkIndex - segment.firstChunk()) * Long.BYTES);
+        // a view of its own, the position of the shared mapping is never moved
+        final var buffer = mapped.duplicate().position(position);
+
+        final var chunk = new ColumnarTransactionLog.Chunk(chunkSize);
+        for (int i = 0; i < chunkSize; i++) {
+            chunk.deltas[i] = unzigzag(getVarint(buffer));
+        }
+        buffer.get(chunk.types);
+        long previous = 0;
+        for (int i = 0; i < chunkSize; i++) {
+            previous += unzigzag(getVarint(buffer));
+            chunk.times[i] = previous;
+        }
+        previous = 0;
+        for (int i = 0; i < chunkSize; i++) {
+            previous += unzigzag(getVarint(buffer));
+            chunk.ids[i] = previous;
+        }
+        return chunk;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
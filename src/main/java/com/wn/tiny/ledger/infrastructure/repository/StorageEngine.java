@@ -0,0 +1,44 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import java.util.function.Supplier;
+
+/**
+ * How the repository holds the history of an account in memory.
+ */
+public enum StorageEngine {
+
+    /**
+     * Every transaction as an object, indexed by id in a hash map. Reads return the recorded objects themselves.
+     * <p>
+     * Rough heap footprint of one transaction with compressed oops: the Transaction (32 bytes), its id (56 bytes for 13
+     * characters), amount (24 bytes) and timestamp (72 bytes with its date and time), the log slot (4 bytes) and the
+     * index entry (40 bytes).
+     */
+    OBJECTS(228, ObjectTransactionLog::new),
+
+    /**
+     * Transactions in primitive columns, 8 bytes of amount, 1 of type, 8 of time and 8 of id, built back into objects
+     * when they are read. Ids are found by binary search instead of a hash map, transactions with ids that are not
+     * time-ordered ids are kept as objects.
+     */
+    COLUMNAR(25, ColumnarTransactionLog::new);
+
+    private final long estimatedBytesPerTransaction;
+    private final Supplier<TransactionLog> logFactory;
+
+    StorageEngine(long estimatedBytesPerTransaction, Supplier<TransactionLog> logFactory) {
+        this.estimatedBytesPerTransaction = estimatedBytesPerTransaction;
+        this.logFactory = logFactory;
+    }
+
+    /**
+     * @return the rough heap footprint of one recorded transaction
+     */
+    public long estimatedBytesPerTransaction() {
+        return estimatedBytesPerTransaction;
+    }
+
+    TransactionLog newLog() {
+        return logFactory.get();
+    }
+}
@@ -0,0 +1,44 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.util.List;
+
+/**
+ * Receives every transaction recorded by {@link AccountRepository}, for example to make it durable.
+ * <p>
+ * {@link #append} is called while the account log is locked, so the journal sees the transactions of an account in
+ * the same order as the log. It must be cheap and must not block on I/O. Waiting for the transaction to be durable is
+ * done afterwards through {@link #awaitDurable}, outside the lock, which lets concurrent writers share a flush.
+ * <p>
+ * Tickets never decrease and are made durable in order: once {@link #awaitDurable} returns for a ticket, every
+ * smaller ticket is durable too, and once it fails for a ticket, it fails for every later one. The repository relies
+ * on it to publish the writes of an account in journal order.
+ */
+public interface TransactionJournal {
+
+    TransactionJournal NONE = new TransactionJournal() {
+        @Override
+        public long append(String accountId, List<Transaction> transactions) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long ticket) {
+        }
+    };
+
+    /**
+     * Journals the transactions as a single unit: after a crash either all of them are recovered or none.
+     *
+     * @return a ticket to pass to {@link #awaitDurable}
+     */
+    long append(String accountId, List<Transaction> transactions);
+
+    default long append(String accountId, Transaction transaction) {
+        return append(accountId, List.of(transaction));
+    }
+
+    void awaitDurable(long ticket);
+
+}
@@ -0,0 +1,355 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.HistorySlice;
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only log of transactions stored in fixed-size chunks, how an entry is stored in its chunk is left to the
+ * subclasses.
+ * <p>
+ * Appends are serialized and never copy existing entries: only the small chunk directories are grown when a new chunk
+ * is needed. Readers never lock, they read the published high-water mark ({@link #size()}) and can safely access
+ * every entry below it.
+ * <p>
+ * Timestamps are taken just before the append, so the log is sorted by time except for concurrent writers overtaking
+ * each other. The log keeps the running maximum timestamp at the end of every chunk and the largest lag of an entry
+ * behind the running maximum, which lets {@link #findByTime} binary-search the start of a time range and stop right
+ * after its end, however the entries are interleaved. It also keeps the running balance at the end of every chunk,
+ * the checkpoints {@link #balanceAsOf} starts from.
+ */
+abstract class TransactionLog {
+
+    static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    final int chunkShift;
+    final int chunkMask;
+
+    /* Running maximum of the time keys up to the last entry written to each chunk, grown with the chunk directory */
+    private volatile long[] chunkMaxTimes;
+    /* Sum of the balance deltas up to the last entry written to each chunk, grown with the chunk directory */
+    private volatile long[] chunkBalances;
+    /* Largest time an entry was behind the running maximum when it was appended, only grows */
+    private volatile long maxTimeLag;
+    /* Guarded by the log lock */
+    private long maxTime = Long.MIN_VALUE;
+    private long balance;
+    private volatile int size;
+
+    TransactionLog() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    TransactionLog(int chunkSize) {
+        if (chunkSize <= 0 || Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a positive power of two");
+        }
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.chunkMaxTimes = new long[1];
+        this.chunkBalances = new long[1];
+    }
+
+    /**
+     * Appends a transaction and publishes it to readers.
+     *
+     * @return the sequence number (position) of the appended transaction
+     */
+    synchronized int append(Transaction transaction) {
+        final int index = size;
+        if (index == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Transaction log is full");
+        }
+        store(index, transaction);
+
+        // volatile write, publishes the entry (and any new chunk) to readers
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * Appends the transactions in order and publishes them to readers at once, readers see either none or all of
+     * them.
+     *
+     * @return the sequence number of the first appended transaction
+     */
+    synchronized int appendAll(List<Transaction> transactions) {
+        final int first = size;
+        if (transactions.size() > Integer.MAX_VALUE - first) {
+            throw new IllegalStateException("Transaction log is full");
+        }
+        int index = first;
+        for (var transaction : transactions) {
+            store(index++, transaction);
+        }
+
+        size = index;
+        return first;
+    }
+
+    /* Called with the log lock held, the entry is not visible until the size is published */
+    private void store(int index, Transaction transaction) {
+        final int chunkIndex = index >>> chunkShift;
+        if (chunkIndex == chunkMaxTimes.length) {
+            final int length = chunkMaxTimes.length << 1;
+            growChunks(length);
+            chunkMaxTimes = Arrays.copyOf(chunkMaxTimes, length);
+            chunkBalances = Arrays.copyOf(chunkBalances, length);
+        }
+        final long time = timeKey(transaction.getTimestamp());
+        storeEntry(index, transaction, time);
+
+        if (time > maxTime) {
+            maxTime = time;
+        } else if (maxTime - time > maxTimeLag) {
+            maxTimeLag = maxTime - time;
+        }
+        chunkMaxTimes[chunkIndex] = maxTime;
+
+        balance += transaction.getBalanceDelta();
+        chunkBalances[chunkIndex] = balance;
+    }
+
+    /**
+     * Grows the chunk directories of the subclass to {@code length} chunks. Called with the log lock held.
+     */
+    abstract void growChunks(int length);
+
+    /**
+     * Stores the entry at {@code index}, allocating its chunk when it is the first one. Called with the log lock held,
+     * the entry is published to readers afterwards.
+     *
+     * @param timeKey the timestamp of the transaction as returned by {@link #timeKey}
+     */
+    abstract void storeEntry(int index, Transaction transaction, long timeKey);
+
+    /**
+     * Reads the published entry at {@code index}.
+     */
+    abstract Transaction read(int index);
+
+    /**
+     * @return the {@link #timeKey} of the published entry at {@code index}
+     */
+    abstract long timeKeyAt(int index);
+
+    /**
+     * @return the balance delta of the published entry at {@code index}
+     */
+    abstract long balanceDeltaAt(int index);
+
+    /**
+     * Finds a published transaction by its id.
+     *
+     * @return the transaction, {@code null} when there is none with this id
+     */
+    abstract Transaction findById(String id);
+
+    /**
+     * Makes appended transactions findable by their id, for the logs that index them apart from the entries. Called
+     * after the append, without the log lock.
+     */
+    void indexIds(List<Transaction> transactions) {
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the largest time key of the entries up to the end of the chunk, which must hold published entries
+     */
+    long chunkMaxTime(int chunkIndex) {
+        return chunkMaxTimes[chunkIndex];
+    }
+
+    Transaction get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return read(index);
+    }
+
+    /**
+     * Returns an immutable view of the log bounded by the high-water mark at the time of the call.
+     * Later appends are not visible through the returned list.
+     */
+    List<Transaction> snapshot() {
+        return new Snapshot(0, size);
+    }
+
+    /**
+     * Returns an immutable view of at most {@code limit} entries starting at sequence {@code from}, bounded by the
+     * high-water mark at the time of the call. The cost does not depend on the size of the log.
+     */
+    List<Transaction> snapshot(int from, int limit) {
+        if (from < 0 || limit < 0) {
+            throw new IllegalArgumentException("Sequence and limit must not be negative");
+        }
+        final int to = (int) Math.min((long) from + limit, size);
+        return from >= to ? List.of() : new Snapshot(from, to);
+    }
+
+    /**
+     * Finds the entries with a timestamp in {@code [from, to)}, in log order, starting at sequence {@code start}.
+     * The search starts at the first chunk that reaches {@code from} and stops once every later entry is known to be
+     * at or after {@code to}, so the cost depends on the size of the range, not on the size of the log.
+     *
+     * @param from inclusive, {@code null} for no lower bound
+     * @param to   exclusive, {@code null} for no upper bound
+     * @return at most {@code limit} entries, and the sequence number of the next entry in the range when there is one
+     */
+    HistorySlice findByTime(LocalDateTime from, LocalDateTime to, int start, int limit) {
+        if (start < 0 || limit < 0) {
+            throw new IllegalArgumentException("Sequence and limit must not be negative");
+        }
+        // volatile read first, the chunk times and lag below are at least as recent as the entries below the size
+        final int end = size;
+        final long lag = maxTimeLag;
+        final long[] maxTimes = chunkMaxTimes;
+        if (start >= end) {
+            return new HistorySlice(List.of(), HistorySlice.NO_MORE);
+        }
+        final long fromTime = from == null ? Long.MIN_VALUE : timeKey(from);
+        final long toTime = to == null ? Long.MAX_VALUE : timeKey(to);
+        // an entry is at most lag behind the running maximum, so once the maximum reaches this no entry is in range
+        final long stopTime = toTime > Long.MAX_VALUE - lag ? Long.MAX_VALUE : toTime + lag;
+
+        // first chunk whose running maximum reaches the start of the range, every entry before it is earlier
+        int low = start >>> chunkShift;
+        int high = (end - 1) >>> chunkShift;
+        if (maxTimes[high] < fromTime) {
+            return new HistorySlice(List.of(), HistorySlice.NO_MORE);
+        }
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (maxTimes[middle] >= fromTime) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        long runningMax = low == 0 ? Long.MIN_VALUE : maxTimes[low - 1];
+        final List<Transaction> found = new ArrayList<>(Math.min(limit, 256));
+        for (int index = low << chunkShift; index < end; index++) {
+            final long time = timeKeyAt(index);
+            runningMax = Math.max(runningMax, time);
+            if (index >= start && time >= fromTime && time < toTime) {
+                if (found.size() == limit) {
+                    return new HistorySlice(found, index);
+                }
+                found.add(read(index));
+            }
+            // a saturated stop time is never reached, entries saturated at the maximum may still be followed by others
+            if (runningMax >= stopTime && stopTime != Long.MAX_VALUE) {
+                break;
+            }
+        }
+        return new HistorySlice(found, HistorySlice.NO_MORE);
+    }
+
+    /**
+     * Returns the sum of the balance deltas of the entries with a timestamp at or before {@code asOf}, in minor units.
+     * <p>
+     * Every chunk whose running maximum timestamp is at or before {@code asOf} is counted whole from its checkpoint,
+     * the last such chunk is found by binary search. Only the entries after it are read, up to the point where every
+     * later entry is known to be after {@code asOf}, so the cost does not grow with the size of the log.
+     */
+    long balanceAsOf(LocalDateTime asOf) {
+        // volatile read first, the checkpoints of the complete chunks below the size are final
+        final int end = size;
+        final long lag = maxTimeLag;
+        final long[] maxTimes = chunkMaxTimes;
+        final long[] balances = chunkBalances;
+        final long time = timeKey(asOf);
+        final long stopTime = time > Long.MAX_VALUE - lag ? Long.MAX_VALUE : time + lag;
+
+        // first complete chunk whose running maximum is after the time, the partial last chunk is always read
+        int low = 0;
+        int high = end >>> chunkShift;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (maxTimes[middle] > time) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        long result = low == 0 ? 0 : balances[low - 1];
+        long runningMax = low == 0 ? Long.MIN_VALUE : maxTimes[low - 1];
+        for (int index = low << chunkShift; index < end; index++) {
+            final long transactionTime = timeKeyAt(index);
+            runningMax = Math.max(runningMax, transactionTime);
+            if (transactionTime <= time) {
+                result += balanceDeltaAt(index);
+            }
+            if (runningMax > stopTime) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sum of the balance deltas of the first {@code sequence} entries, starting from the checkpoint of the
+     * chunk before the one the sequence falls in.
+     */
+    long balanceBefore(int sequence) {
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Sequence must not be negative");
+        }
+        final int end = Math.min(sequence, size);
+        final int chunkIndex = end >>> chunkShift;
+        long result = chunkIndex == 0 ? 0 : chunkBalances[chunkIndex - 1];
+        for (int index = chunkIndex << chunkShift; index < end; index++) {
+            result += balanceDeltaAt(index);
+        }
+        return result;
+    }
+
+    /* Orders timestamps as a long: nanoseconds since the epoch reading the local date-time as UTC, saturated outside
+       of the years 1677 to 2262 so that far away range bounds still compare correctly */
+    static long timeKey(LocalDateTime timestamp) {
+        final long seconds = timestamp.toEpochSecond(ZoneOffset.UTC);
+        if (seconds >= Long.MAX_VALUE / 1_000_000_000L) {
+            return Long.MAX_VALUE;
+        }
+        if (seconds <= Long.MIN_VALUE / 1_000_000_000L) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * 1_000_000_000L + timestamp.getNano();
+    }
+
+    private final class Snapshot extends AbstractList<Transaction> implements RandomAccess {
+
+        private final int from;
+        private final int size;
+
+        private Snapshot(int from, int to) {
+            this.from = from;
+            this.size = to - from;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return TransactionLog.this.get(from + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
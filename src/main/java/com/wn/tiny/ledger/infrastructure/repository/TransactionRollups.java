@@ -0,0 +1,123 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.RollupPeriod;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionRollup;
+import com.wn.tiny.ledger.domain.TransactionType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Count, total, minimum and maximum of the transactions of an account per type and per minute, hour and day,
+ * maintained as transactions are appended.
+ * <p>
+ * An append updates one bucket per period, whatever the number of buckets. Buckets are immutable and replaced on
+ * update, so readers never lock and always see consistent totals for a bucket. Only the most recent buckets of each
+ * period are kept, see {@link #retention}.
+ * <p>
+ * Appends must be serialized by the caller, readers may run concurrently.
+ */
+class TransactionRollups {
+
+    private static final RollupPeriod[] PERIODS = RollupPeriod.values();
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    /* Indexed by period then type */
+    private final Series[][] series = new Series[PERIODS.length][TYPES.length];
+
+    TransactionRollups() {
+        for (var period : PERIODS) {
+            for (var type : TYPES) {
+                series[period.ordinal()][type.ordinal()] = new Series(retention(period));
+            }
+        }
+    }
+
+    /**
+     * @return the number of most recent buckets kept for the period: two days of minutes, 90 days of hours and ten
+     * years of days
+     */
+    static int retention(RollupPeriod period) {
+        return switch (period) {
+            case MINUTE -> 2 * 24 * 60;
+            case HOUR -> 90 * 24;
+            case DAY -> 10 * 366;
+        };
+    }
+
+    void add(Transaction transaction) {
+        final long amount = transaction.getAmount().minorUnits();
+        for (var period : PERIODS) {
+            series[period.ordinal()][transaction.getType().ordinal()]
+                    .add(period.bucketStart(transaction.getTimestamp()), amount);
+        }
+    }
+
+    void addAll(List<Transaction> transactions) {
+        for (var transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    /**
+     * Returns the buckets of the period that overlap {@code [from, to)}, ordered by start then type. Either bound may
+     * be {@code null}. Buckets without transactions are left out.
+     */
+    List<TransactionRollup> find(RollupPeriod period, LocalDateTime from, LocalDateTime to) {
+        final List<TransactionRollup> rollups = new ArrayList<>();
+        for (var type : TYPES) {
+            NavigableMap<LocalDateTime, Bucket> buckets = series[period.ordinal()][type.ordinal()].buckets;
+            if (from != null) {
+                buckets = buckets.tailMap(period.bucketStart(from), true);
+            }
+            if (to != null) {
+                buckets = buckets.headMap(to, false);
+            }
+            buckets.forEach((start, bucket) -> rollups.add(new TransactionRollup(start, type, bucket.count(),
+                    Money.ofMinor(bucket.total()), Money.ofMinor(bucket.min()), Money.ofMinor(bucket.max()))));
+        }
+        rollups.sort(Comparator.comparing(TransactionRollup::start).thenComparing(TransactionRollup::type));
+        return rollups;
+    }
+
+    private static final class Series {
+
+        private final ConcurrentSkipListMap<LocalDateTime, Bucket> buckets = new ConcurrentSkipListMap<>();
+        private final int retention;
+        /* Written by the appending thread only, the skip list size is not constant time */
+        private int size;
+
+        private Series(int retention) {
+            this.retention = retention;
+        }
+
+        private void add(LocalDateTime start, long amount) {
+            final var bucket = buckets.get(start);
+            if (bucket != null) {
+                buckets.put(start, bucket.add(amount));
+                return;
+            }
+            buckets.put(start, new Bucket(1, amount, amount, amount));
+            if (++size > retention) {
+                buckets.pollFirstEntry();
+                size--;
+            }
+        }
+    }
+
+    private record Bucket(long count, long total, long min, long max) {
+
+        private Bucket add(long amount) {
+            // saturates instead of failing, the transaction is already in the log when its bucket is updated
+            final long sum = total + amount;
+            return new Bucket(count + 1, ((total ^ sum) & (amount ^ sum)) < 0 ? Long.MAX_VALUE : sum,
+                    Math.min(min, amount), Math.max(max, amount));
+        }
+    }
+}
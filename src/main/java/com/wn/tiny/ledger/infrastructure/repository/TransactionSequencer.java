@@ -0,0 +1,208 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.HistorySlice;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.RollupPeriod;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionPersistence;
+import com.wn.tiny.ledger.domain.TransactionRollup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongPredicate;
+
+/**
+ * {@link TransactionPersistence} that funnels every write through a single writer thread.
+ * <p>
+ * Callers put their transactions on a bounded ring buffer and wait on a future. The writer takes them off in arrival
+ * order and journals them in the {@link AccountRepository} one after the other, so the account locks are never
+ * contended by writers. The journal is only handed the record by the writer; waiting for it to be durable and
+ * publishing it to readers happens back on the caller thread, so the writer never blocks on I/O. When the buffer is full,
+ * callers wait for room, which bounds the memory held by pending writes.
+ * <p>
+ * Reads go straight to the repository.
+ */
+public class TransactionSequencer implements TransactionPersistence, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionSequencer.class);
+
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    /* Upper bound of the writes taken off the buffer at once, keeps the pending list of the writer small */
+    private static final int MAX_DRAIN = 256;
+    private static final Write SHUTDOWN = new Write(null, List.of(), balance -> false);
+
+    private final AccountRepository repository;
+    private final BlockingQueue<Write> ring;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public TransactionSequencer(AccountRepository repository) {
+        this(repository, DEFAULT_CAPACITY);
+    }
+
+    public TransactionSequencer(AccountRepository repository, int capacity) {
+        this.repository = repository;
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeLoop, "ledger-sequencer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void addTransaction(String accountId, Transaction transaction, LongPredicate balanceValidation) {
+        addTransactions(accountId, List.of(transaction), balanceValidation);
+    }
+
+    @Override
+    public void addTransactions(String accountId, List<Transaction> transactions, LongPredicate balanceValidation) {
+        final var write = new Write(accountId, transactions, balanceValidation);
+        submit(write);
+
+        final JournaledWrite journaled;
+        try {
+            journaled = write.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        repository.publish(journaled);
+    }
+
+    @Override
+    public Money getBalance(String accountId) {
+        return repository.getBalance(accountId);
+    }
+
+    @Override
+    public Money getBalance(String accountId, LocalDateTime asOf) {
+        return repository.getBalance(accountId, asOf);
+    }
+
+    @Override
+    public Money getBalanceBefore(String accountId, long sequence) {
+        return repository.getBalanceBefore(accountId, sequence);
+    }
+
+    @Override
+    public long getHistorySize(String accountId) {
+        return repository.getHistorySize(accountId);
+    }
+
+    @Override
+    public Optional<Transaction> findTransaction(String accountId, String id) {
+        return repository.findTransaction(accountId, id);
+    }
+
+    @Override
+    public List<Transaction> getTransactionHistory(String accountId) {
+        return repository.getTransactionHistory(accountId);
+    }
+
+    @Override
+    public List<Transaction> getTransactionHistory(String accountId, long fromSequence, int limit) {
+        return repository.getTransactionHistory(accountId, fromSequence, limit);
+    }
+
+    @Override
+    public HistorySlice getTransactionHistory(String accountId, LocalDateTime from, LocalDateTime to, long fromSequence,
+                                              int limit) {
+        return repository.getTransactionHistory(accountId, from, to, fromSequence, limit);
+    }
+
+    @Override
+    public List<TransactionRollup> getRollups(String accountId, RollupPeriod period, LocalDateTime from,
+                                              LocalDateTime to) {
+        return repository.getRollups(accountId, period, from, to);
+    }
+
+    /**
+     * @return the number of writes waiting for the writer thread
+     */
+    public int pendingWrites() {
+        return ring.size();
+    }
+
+    /**
+     * Applies the writes already submitted, then stops the writer thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        ring.put(SHUTDOWN);
+        writer.join();
+    }
+
+    private void submit(Write write) {
+        if (closed) {
+            throw new LedgerStorageException("Transaction sequencer is closed", null);
+        }
+        try {
+            ring.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LedgerStorageException("Interrupted while waiting for the transaction sequencer", e);
+        }
+        // closed meanwhile, the writer may already be gone: whoever removes the write from the buffer completes it
+        if (closed && ring.remove(write)) {
+            write.result().completeExceptionally(new LedgerStorageException("Transaction sequencer is closed", null));
+        }
+    }
+
+    private void writeLoop() {
+        final List<Write> pending = new ArrayList<>(MAX_DRAIN);
+        boolean running = true;
+        while (running) {
+            try {
+                pending.add(ring.take());
+            } catch (InterruptedException e) {
+                logger.warn("Transaction sequencer was interrupted, no more transactions can be recorded");
+                break;
+            }
+            ring.drainTo(pending, MAX_DRAIN - 1);
+
+            for (var write : pending) {
+                if (write == SHUTDOWN) {
+                    running = false;
+                } else if (!running) {
+                    write.result().completeExceptionally(new LedgerStorageException("Transaction sequencer is closed", null));
+                } else {
+                    apply(write);
+                }
+            }
+            pending.clear();
+        }
+
+        // writes that raced with the shutdown
+        for (Write write; (write = ring.poll()) != null; ) {
+            write.result().completeExceptionally(new LedgerStorageException("Transaction sequencer is closed", null));
+        }
+    }
+
+    private void apply(Write write) {
+        try {
+            write.result().complete(repository.journal(write.accountId(), write.transactions(),
+                    write.balanceValidation()));
+        } catch (RuntimeException e) {
+            write.result().completeExceptionally(e);
+        }
+    }
+
+    private record Write(String accountId, List<Transaction> transactions, LongPredicate balanceValidation,
+                         CompletableFuture<JournaledWrite> result) {
+
+        private Write(String accountId, List<Transaction> transactions, LongPredicate balanceValidation) {
+            this(accountId, transactions, balanceValidation, new CompletableFuture<>());
+        }
+    }
+}
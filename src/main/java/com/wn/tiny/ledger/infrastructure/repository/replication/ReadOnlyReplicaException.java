@@ -0,0 +1,10 @@
+package com.wn.tiny.ledger.infrastructure.repository.replication;
+
+/**
+ * A write sent to a follower, only the leader accepts writes.
+ */
+public class ReadOnlyReplicaException extends RuntimeException {
+    public ReadOnlyReplicaException() {
+        super("This instance is a read-only follower, send writes to the replication leader");
+    }
+}
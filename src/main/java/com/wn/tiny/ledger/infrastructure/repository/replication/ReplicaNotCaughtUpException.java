@@ -0,0 +1,10 @@
+package com.wn.tiny.ledger.infrastructure.repository.replication;
+
+/**
+ * A read on a follower that does not hold the state of the leader it asked for yet, worth retrying shortly.
+ */
+public class ReplicaNotCaughtUpException extends RuntimeException {
+    public ReplicaNotCaughtUpException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,238 @@
+package com.wn.tiny.ledger.infrastructure.repository.replication;
+
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a read-only {@link AccountRepository} in step with a {@link ReplicationLeader}: loads its snapshot, then
+ * applies its records in order on a single thread, the only writer of the repository.
+ * <p>
+ * The follower starts with a snapshot of the leader, and starts over from a new one when it falls out of the buffer
+ * of the leader or the leader restarted. Until the first snapshot is loaded, and while a new one is, the follower is
+ * not synced and its repository must not be read; reads already running keep seeing the previous accounts, which are
+ * only replaced once the new ones are loaded. When the connection drops it keeps serving what it has while
+ * reconnecting, its lag and staleness tell how far behind that is.
+ */
+public class ReplicationFollower implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    /* Many heartbeats, a leader silent for this long is considered gone */
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(1);
+
+    private final AccountRepository repository;
+    private final String host;
+    private final int port;
+    /* Told the account of every record applied */
+    private final Consumer<String> listener;
+    private final Thread thread;
+    /* Lets readers wait for a sequence without pinning the carrier of a virtual thread */
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progressed = progressLock.newCondition();
+
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile boolean synced;
+    private volatile long appliedSequence;
+    private volatile long leaderSequence;
+    private volatile long lastContactNanos = System.nanoTime();
+    /* Epoch of the leader the repository was replicated from, only used by the follower thread */
+    private long epoch;
+
+    /**
+     * @param repository an empty repository, written only by the follower from now on
+     * @param listener   called with the account of every record applied, after it is visible to readers
+     */
+    public ReplicationFollower(AccountRepository repository, String host, int port, Consumer<String> listener) {
+        this.repository = repository;
+        this.host = host;
+        this.port = port;
+        this.listener = listener;
+        this.thread = new Thread(this::replicate, "ledger-replication-follower");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * @return whether the repository holds a snapshot of the leader and can be read
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * @return the sequence number of the last record of the leader held by the repository
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return the number of records of the leader not applied yet, as of the last message from the leader
+     */
+    public long getLag() {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    /**
+     * @return the time since the last message from the leader, which sends one at least every heartbeat interval
+     */
+    public Duration getStaleness() {
+        return Duration.ofNanos(System.nanoTime() - lastContactNanos);
+    }
+
+    /**
+     * Waits until the record with the given sequence number is applied, to read after a write made on the leader.
+     *
+     * @return whether it was applied within the timeout
+     */
+    public boolean awaitSequence(long sequence, Duration timeout) {
+        if (synced && appliedSequence >= sequence) {
+            return true;
+        }
+        long remaining = timeout.toNanos();
+        progressLock.lock();
+        try {
+            while (!synced || appliedSequence < sequence) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = progressed.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        final var current = socket;
+        if (current != null) {
+            current.close();
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void replicate() {
+        int failures = 0;
+        while (!closed) {
+            try (var connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(host, port), (int) CONNECT_TIMEOUT.toMillis());
+                connection.setSoTimeout((int) READ_TIMEOUT.toMillis());
+                connection.setTcpNoDelay(true);
+                final var in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 64 * 1024));
+                final var out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                ReplicationProtocol.writeHello(out, synced ? epoch : 0, appliedSequence + 1);
+                out.flush();
+                ReplicationProtocol.readHeader(in);
+                final long leaderEpoch = in.readLong();
+                logger.info("Replicating from the leader at {}:{}", host, port);
+                failures = 0;
+                while (!closed) {
+                    receive(in, leaderEpoch);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!closed && failures++ == 0) {
+                    logger.warn("Lost the replication leader at {}:{}, retrying every {}: {}", host, port,
+                            RECONNECT_DELAY, e.toString());
+                }
+            }
+            if (!closed) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(DataInputStream in, long leaderEpoch) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case ReplicationProtocol.SNAPSHOT -> {
+                final long covered = in.readLong();
+                if (synced) {
+                    logger.info("Starting over from a new snapshot of the leader");
+                    synced = false;
+                }
+                final var accounts = ReplicationProtocol.readSnapshotAccounts(in);
+                repository.replaceAll(accounts);
+                epoch = leaderEpoch;
+                leaderSequence = covered;
+                appliedSequence = covered;
+                synced = true;
+                applied(covered);
+                for (var account : accounts) {
+                    listener.accept(account.accountId());
+                }
+                logger.info("Loaded a snapshot of the leader up to sequence {} with {} accounts", covered,
+                        accounts.size());
+            }
+            case ReplicationProtocol.RECORDS -> {
+                final long sequence = in.readLong();
+                final var records = ReplicationProtocol.readRecords(in);
+                for (var record : records) {
+                    if (!synced || record.sequence() != appliedSequence + 1) {
+                        throw new IOException("Expected record " + (appliedSequence + 1) + " but got "
+                                + record.sequence());
+                    }
+                    // accounts captured after the snapshot started may already hold records past the covered sequence
+                    if (record.sequence() > repository.getJournalTicket(record.accountId())) {
+                        repository.restore(record.sequence(), record.accountId(), record.transactions());
+                        listener.accept(record.accountId());
+                    }
+                    appliedSequence = record.sequence();
+                }
+                leaderSequence = sequence;
+                applied(appliedSequence);
+            }
+            case ReplicationProtocol.HEARTBEAT -> {
+                leaderSequence = in.readLong();
+                lastContactNanos = System.nanoTime();
+            }
+            default -> throw new IOException("Unknown replication message " + type);
+        }
+    }
+
+    private void applied(long sequence) {
+        lastContactNanos = System.nanoTime();
+        progressLock.lock();
+        try {
+            appliedSequence = sequence;
+            progressed.signalAll();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.wn.tiny.ledger.infrastructure.repository.replication;
+
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import com.wn.tiny.ledger.infrastructure.repository.LedgerStorageException;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionJournal;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationProtocol.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Journal of the instance that accepts writes, which numbers every record and streams them in that order to the
+ * {@link ReplicationFollower}s connected to its port.
+ * <p>
+ * Records are numbered under a single lock, so the order of the stream is one in which every account sees its own
+ * records in log order. The numbers are the sequence numbers of the delegate journal when it is the write-ahead log,
+ * which keeps snapshots and recovery working on the same numbers, otherwise the leader counts on its own. The last
+ * records are kept in a ring buffer: a follower that reconnects within it resumes where it stopped, any other one
+ * first gets a snapshot of the repository. A record is only sent once the delegate made it durable, so a follower
+ * never holds a transaction the leader could lose in a crash.
+ * <p>
+ * Every leader start draws a new epoch, a follower of an earlier run always starts over from a snapshot.
+ */
+public class ReplicationLeader implements TransactionJournal, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationLeader.class);
+
+    /* Records sent to a follower in one message */
+    static final int MAX_BATCH_RECORDS = 256;
+    /* Sent to an idle follower, which reports its lag and staleness from them */
+    static final Duration HEARTBEAT_INTERVAL = Duration.ofMillis(100);
+    private static final Duration HANDSHAKE_TIMEOUT = Duration.ofSeconds(5);
+
+    private final TransactionJournal delegate;
+    /* The delegate numbers its records one after the other, the leader uses its tickets */
+    private final boolean numberedByDelegate;
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final int port;
+
+    /* Guarded by this: the last records by sequence modulo the length, the last sequence and the first one buffered */
+    private final Record[] buffer;
+    private long lastSequence;
+    private long firstSequence = 1;
+    private int waitingSenders;
+
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private AccountRepository repository;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * @param delegate   the journal that makes the records durable, {@link TransactionJournal#NONE} or a journal whose
+     *                   tickets number its records one after the other, like the write-ahead log
+     * @param port       the port to listen on for followers, 0 for any free port
+     * @param bufferSize the number of last records kept for the followers that reconnect
+     */
+    public ReplicationLeader(TransactionJournal delegate, int port, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Replication buffer must hold at least one record");
+        }
+        this.delegate = delegate;
+        this.numberedByDelegate = delegate != TransactionJournal.NONE;
+        this.port = port;
+        this.buffer = new Record[bufferSize];
+    }
+
+    /**
+     * Starts accepting followers, once the repository holds the recovered state.
+     *
+     * @param lastSequence the sequence number of the last record already in the repository
+     */
+    public void start(AccountRepository repository, long lastSequence) throws IOException {
+        synchronized (this) {
+            this.lastSequence = lastSequence;
+            this.firstSequence = lastSequence + 1;
+        }
+        this.repository = repository;
+        this.serverSocket = new ServerSocket(port);
+        this.acceptor = new Thread(this::acceptFollowers, "ledger-replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Numbers the transactions, journals them through the delegate and buffers them for the followers. The lists
+     * are kept as they are, not copied.
+     *
+     * @return the sequence number of the record, which is also the ticket of the delegate
+     */
+    @Override
+    public long append(String accountId, List<Transaction> transactions) {
+        synchronized (this) {
+            final long ticket = delegate.append(accountId, transactions);
+            lastSequence = numberedByDelegate ? ticket : lastSequence + 1;
+            buffer[(int) (lastSequence % buffer.length)] = new Record(lastSequence, accountId, transactions);
+            if (waitingSenders > 0) {
+                notifyAll();
+            }
+            return lastSequence;
+        }
+    }
+
+    @Override
+    public void awaitDurable(long ticket) {
+        delegate.awaitDurable(ticket);
+    }
+
+    /**
+     * @return the sequence number of the last record, a follower that applied it holds every write acknowledged so far
+     */
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (var follower : followers) {
+            follower.close();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        if (acceptor != null) {
+            try {
+                acceptor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void acceptFollowers() {
+        while (!closed) {
+            try {
+                final var socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                followers.add(socket);
+                final var sender = new Thread(() -> serve(socket),
+                        "ledger-replication-sender-" + connections.incrementAndGet());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Failed to accept a replication follower", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        final var follower = socket.getRemoteSocketAddress();
+        try (socket) {
+            final var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            socket.setSoTimeout((int) HANDSHAKE_TIMEOUT.toMillis());
+            ReplicationProtocol.readHeader(in);
+            final long followerEpoch = in.readLong();
+            long next = in.readLong();
+            socket.setSoTimeout(0);
+            out.writeInt(ReplicationProtocol.MAGIC);
+            out.writeInt(ReplicationProtocol.VERSION);
+            out.writeLong(epoch);
+
+            if (followerEpoch == epoch && isBuffered(next)) {
+                logger.info("Follower {} resumes replication from sequence {}", follower, next);
+            } else {
+                final long covered = sendSnapshot(out);
+                logger.info("Sent a snapshot up to sequence {} to follower {}", covered, follower);
+                next = covered + 1;
+            }
+            out.flush();
+
+            while (!closed) {
+                final var records = recordsFrom(next);
+                if (records == null) {
+                    logger.warn("Follower {} fell more than {} records behind, disconnecting it to start over",
+                            follower, buffer.length);
+                    return;
+                }
+                if (records.isEmpty()) {
+                    ReplicationProtocol.writeHeartbeat(out, lastSequence());
+                } else {
+                    final long last = records.get(records.size() - 1).sequence();
+                    delegate.awaitDurable(last);
+                    ReplicationProtocol.writeRecords(out, lastSequence(), records);
+                    next = last + 1;
+                }
+                out.flush();
+            }
+        } catch (IOException | LedgerStorageException e) {
+            if (!closed) {
+                logger.info("Follower {} disconnected: {}", follower, e.getMessage());
+            }
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    /* Every record up to the covered sequence is in the snapshot, accounts captured later may hold some more */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        final long covered = lastSequence();
+        final var accounts = repository.snapshot();
+        delegate.awaitDurable(lastSequence());
+        ReplicationProtocol.writeSnapshot(out, covered, accounts);
+        return covered;
+    }
+
+    private synchronized boolean isBuffered(long next) {
+        return next >= Math.max(firstSequence, lastSequence - buffer.length + 1) && next <= lastSequence + 1;
+    }
+
+    /**
+     * Waits up to a heartbeat interval for records from {@code next} on.
+     *
+     * @return the next records, empty when there was none, {@code null} when they are no longer buffered
+     */
+    private synchronized List<Record> recordsFrom(long next) {
+        if (next > lastSequence && !closed) {
+            waitingSenders++;
+            try {
+                wait(HEARTBEAT_INTERVAL.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return List.of();
+            } finally {
+                waitingSenders--;
+            }
+        }
+        if (!isBuffered(next)) {
+            return null;
+        }
+        final int count = (int) Math.min(lastSequence - next + 1, MAX_BATCH_RECORDS);
+        final List<Record> records = new ArrayList<>(count);
+        for (long sequence = next; sequence < next + count; sequence++) {
+            records.add(buffer[(int) (sequence % buffer.length)]);
+        }
+        return records;
+    }
+}
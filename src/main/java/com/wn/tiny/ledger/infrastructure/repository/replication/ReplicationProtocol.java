@@ -0,0 +1,157 @@
+package com.wn.tiny.ledger.infrastructure.repository.replication;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.repository.AccountSnapshot;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messages between a {@link ReplicationLeader} and its followers. A follower opens the connection with:
+ * <pre>
+ * int    magic, then int version
+ * long   epoch of the leader it replicated last, 0 when it holds nothing
+ * long   sequence number of the next record it needs
+ * </pre>
+ * The leader answers with its magic, version and epoch, then sends messages for as long as the connection lasts,
+ * each one starting with its type byte:
+ * <pre>
+ * SNAPSHOT   long covered sequence, int number of accounts, then for each account:
+ *              UTF account id, long balance, long sequence of its last record, int number of transactions, then
+ *              the transactions
+ * RECORDS    long last sequence of the leader, int number of records, then for each record:
+ *              long sequence, UTF account id, int number of transactions, then the transactions
+ * HEARTBEAT  long last sequence of the leader
+ * </pre>
+ * with every transaction written as UTF id, long amount in minor units, byte scale, byte type, long timestamp seconds
+ * of the epoch (UTC) and int nanoseconds, the layout of the snapshot files. TCP already checks the bytes, so unlike the
+ * write-ahead log there is no checksum.
+ */
+final class ReplicationProtocol {
+
+    static final int MAGIC = 0x544C5250; // "TLRP"
+    static final int VERSION = 1;
+
+    static final byte SNAPSHOT = 1;
+    static final byte RECORDS = 2;
+    static final byte HEARTBEAT = 3;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    /**
+     * A group of transactions of an account, journaled together under a sequence number of the leader.
+     */
+    record Record(long sequence, String accountId, List<Transaction> transactions) {
+    }
+
+    private ReplicationProtocol() {
+    }
+
+    static void writeHello(DataOutputStream out, long epoch, long nextSequence) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(epoch);
+        out.writeLong(nextSequence);
+    }
+
+    /**
+     * Reads the magic and version sent first by the other side.
+     */
+    static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Peer does not speak the ledger replication protocol");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported replication protocol version " + version);
+        }
+    }
+
+    static void writeSnapshot(DataOutputStream out, long coveredSequence, List<AccountSnapshot> accounts)
+            throws IOException {
+        out.writeByte(SNAPSHOT);
+        out.writeLong(coveredSequence);
+        out.writeInt(accounts.size());
+        for (var account : accounts) {
+            out.writeUTF(account.accountId());
+            out.writeLong(account.balance());
+            out.writeLong(account.journalTicket());
+            writeTransactions(out, account.transactions());
+        }
+    }
+
+    static List<AccountSnapshot> readSnapshotAccounts(DataInputStream in) throws IOException {
+        final int accountCount = in.readInt();
+        final List<AccountSnapshot> accounts = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            final var accountId = in.readUTF();
+            final long balance = in.readLong();
+            final long journalTicket = in.readLong();
+            accounts.add(new AccountSnapshot(accountId, balance, journalTicket, readTransactions(in)));
+        }
+        return accounts;
+    }
+
+    static void writeRecords(DataOutputStream out, long leaderSequence, List<Record> records) throws IOException {
+        out.writeByte(RECORDS);
+        out.writeLong(leaderSequence);
+        out.writeInt(records.size());
+        for (var record : records) {
+            out.writeLong(record.sequence());
+            out.writeUTF(record.accountId());
+            writeTransactions(out, record.transactions());
+        }
+    }
+
+    static List<Record> readRecords(DataInputStream in) throws IOException {
+        final int recordCount = in.readInt();
+        final List<Record> records = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            final long sequence = in.readLong();
+            final var accountId = in.readUTF();
+            records.add(new Record(sequence, accountId, readTransactions(in)));
+        }
+        return records;
+    }
+
+    static void writeHeartbeat(DataOutputStream out, long leaderSequence) throws IOException {
+        out.writeByte(HEARTBEAT);
+        out.writeLong(leaderSequence);
+    }
+
+    private static void writeTransactions(DataOutputStream out, List<Transaction> transactions) throws IOException {
+        out.writeInt(transactions.size());
+        for (var transaction : transactions) {
+            out.writeUTF(transaction.getId());
+            out.writeLong(transaction.getAmount().minorUnits());
+            out.writeByte(transaction.getAmount().scale());
+            out.writeByte(transaction.getType().ordinal());
+            out.writeLong(transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(transaction.getTimestamp().getNano());
+        }
+    }
+
+    private static List<Transaction> readTransactions(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final var id = in.readUTF();
+            final long minorUnits = in.readLong();
+            final int scale = in.readByte();
+            final int type = in.readByte();
+            if (type < 0 || type >= TYPES.length) {
+                throw new IOException("Unknown transaction type " + type);
+            }
+            final var timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            transactions.add(new Transaction(id, new Money(minorUnits, scale), TYPES[type], timestamp));
+        }
+        return transactions;
+    }
+}
@@ -0,0 +1,13 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+/**
+ * How far a transaction has to go before the write that recorded it returns.
+ */
+public enum DurabilityMode {
+    /* Written and fsynced. Concurrent writers share one fsync per batch. */
+    BATCH,
+    /* Written to the OS, fsynced every configured interval. A power loss can drop the last interval. */
+    INTERVAL,
+    /* Written to the OS, which decides when to flush it. Survives a process crash, not a power loss. */
+    OS
+}
@@ -0,0 +1,25 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import java.time.Duration;
+
+/**
+ * What startup recovery did and how long each step took.
+ *
+ * @param snapshotSequence     last log sequence number covered by the loaded snapshot, 0 when there was none
+ * @param snapshotTransactions transactions loaded from the snapshot
+ * @param snapshotLoadTime     time spent reading and loading the snapshot
+ * @param replayedTransactions log records applied on top of the snapshot
+ * @param skippedRecords       log records that were already part of the snapshot
+ * @param replayTime           time spent reading the log
+ */
+public record RecoveryReport(long snapshotSequence,
+                             long snapshotTransactions,
+                             Duration snapshotLoadTime,
+                             long replayedTransactions,
+                             long skippedRecords,
+                             Duration replayTime) {
+
+    public Duration totalTime() {
+        return snapshotLoadTime.plus(replayTime);
+    }
+}
@@ -0,0 +1,204 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.repository.AccountSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot files of the ledger, named after the last write-ahead log sequence number they cover. Layout:
+ * <pre>
+ * int    magic, then int version
+ * long   covered sequence number
+ * int    number of accounts, then for each account:
+ *   UTF    account id
+ *   long   balance in minor units
+ *   long   sequence number of its last transaction
+ *   int    number of transactions, then for each transaction:
+ *     UTF    transaction id
+ *     long   amount in minor units
+ *     byte   amount scale
+ *     byte   transaction type
+ *     long   timestamp, seconds of the epoch (UTC)
+ *     int    timestamp, nanoseconds
+ * long   CRC32C of everything above
+ * </pre>
+ * A snapshot is written to a temporary file and renamed once complete, so a crash never leaves a partial snapshot
+ * behind.
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x544C534E; // "TLSN"
+    private static final int VERSION = 1;
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d{20})\\.snap");
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * A snapshot read back from disk.
+     *
+     * @param coveredSequence every write-ahead log record up to this sequence number is part of the snapshot
+     */
+    public record StoredSnapshot(Path file, long coveredSequence, List<AccountSnapshot> accounts) {
+    }
+
+    public Path write(long coveredSequence, List<AccountSnapshot> accounts) throws IOException {
+        Files.createDirectories(directory);
+        final var file = directory.resolve(String.format("snapshot-%020d.snap", coveredSequence));
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (var stream = new FileOutputStream(temporary.toFile())) {
+            final var checked = new CheckedOutputStream(new BufferedOutputStream(stream, 64 * 1024), new CRC32C());
+            final var out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(coveredSequence);
+            out.writeInt(accounts.size());
+            for (var account : accounts) {
+                out.writeUTF(account.accountId());
+                out.writeLong(account.balance());
+                out.writeLong(account.journalTicket());
+                out.writeInt(account.transactions().size());
+                for (var transaction : account.transactions()) {
+                    writeTransaction(out, transaction);
+                }
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        return file;
+    }
+
+    /**
+     * @return the most recent snapshot, empty when none was written yet
+     */
+    public Optional<StoredSnapshot> readLatest() throws IOException {
+        final var snapshots = listSnapshots();
+        if (snapshots.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(read(snapshots.get(snapshots.size() - 1)));
+    }
+
+    /**
+     * Deletes the snapshots older than the one covering {@code coveredSequence}.
+     */
+    public void deleteOlderThan(long coveredSequence) throws IOException {
+        for (var file : listSnapshots()) {
+            if (sequenceOf(file) < coveredSequence) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private StoredSnapshot read(Path file) throws IOException {
+        try (var checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024), new CRC32C())) {
+            final var in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a ledger snapshot");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            final long coveredSequence = in.readLong();
+            final int accountCount = in.readInt();
+            final List<AccountSnapshot> accounts = new ArrayList<>(accountCount);
+            for (int i = 0; i < accountCount; i++) {
+                final var accountId = in.readUTF();
+                final long balance = in.readLong();
+                final long journalTicket = in.readLong();
+                final int transactionCount = in.readInt();
+                final List<Transaction> transactions = new ArrayList<>(transactionCount);
+                for (int j = 0; j < transactionCount; j++) {
+                    try {
+                        transactions.add(readTransaction(in));
+                    } catch (RuntimeException e) {
+                        // a corrupted field can fail decoding before the checksum is reached
+                        throw new IOException("Snapshot " + file + " is corrupted", e);
+                    }
+                }
+                accounts.add(new AccountSnapshot(accountId, balance, journalTicket, transactions));
+            }
+            final long crc = checked.getChecksum().getValue();
+            if (in.readLong() != crc) {
+                throw new IOException("Snapshot " + file + " is corrupted");
+            }
+            return new StoredSnapshot(file, coveredSequence, accounts);
+        }
+    }
+
+    private static void writeTransaction(DataOutputStream out, Transaction transaction) throws IOException {
+        out.writeUTF(transaction.getId());
+        out.writeLong(transaction.getAmount().minorUnits());
+        out.writeByte(transaction.getAmount().scale());
+        out.writeByte(transaction.getType().ordinal());
+        out.writeLong(transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(transaction.getTimestamp().getNano());
+    }
+
+    private static Transaction readTransaction(DataInputStream in) throws IOException {
+        final var id = in.readUTF();
+        final long minorUnits = in.readLong();
+        final int scale = in.readByte();
+        final var type = TYPES[in.readByte()];
+        final var timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        return new Transaction(id, new Money(minorUnits, scale), type, timestamp);
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (var files = Files.list(directory)) {
+            return files
+                    .filter(path -> SNAPSHOT_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(SnapshotStore::sequenceOf))
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        final var matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    /* Makes the rename durable before the log segments it replaces are deleted */
+    private void syncDirectory() {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on every platform, the rename is still atomic
+        }
+    }
+}
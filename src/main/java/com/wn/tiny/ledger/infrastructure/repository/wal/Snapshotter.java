@@ -0,0 +1,124 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically stores a snapshot of the {@link AccountRepository} and drops the write-ahead log segments it covers,
+ * so recovery only has to load the latest snapshot and replay the log written since.
+ * <p>
+ * Snapshots are taken on a background thread. Each account is locked only while the position of its log is read;
+ * the history itself is immutable up to that position and is written out without holding any lock.
+ */
+public class Snapshotter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(Snapshotter.class);
+
+    private final AccountRepository repository;
+    private final WriteAheadLog writeAheadLog;
+    private final SnapshotStore store;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "ledger-snapshotter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public Snapshotter(AccountRepository repository, WriteAheadLog writeAheadLog, SnapshotStore store) {
+        this.repository = repository;
+        this.writeAheadLog = writeAheadLog;
+        this.store = store;
+    }
+
+    /**
+     * Loads the latest snapshot into an empty repository, then replays the log records that are not part of it and
+     * gets the log ready for appends.
+     */
+    public static RecoveryReport recover(AccountRepository repository, WriteAheadLog writeAheadLog,
+                                         SnapshotStore store) throws IOException {
+        long start = System.nanoTime();
+        long snapshotSequence = 0;
+        long snapshotTransactions = 0;
+        final var snapshot = store.readLatest();
+        if (snapshot.isPresent()) {
+            snapshotSequence = snapshot.get().coveredSequence();
+            for (var account : snapshot.get().accounts()) {
+                repository.restore(account);
+                snapshotTransactions += account.transactions().size();
+            }
+        }
+        final var snapshotLoadTime = Duration.ofNanos(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        final long[] replayed = new long[1];
+        final long[] skipped = new long[1];
+        writeAheadLog.recover(snapshotSequence, (sequence, accountId, transactions) -> {
+            // accounts captured after the snapshot started may already hold records past the covered sequence
+            if (sequence > repository.getJournalTicket(accountId)) {
+                repository.restore(sequence, accountId, transactions);
+                replayed[0] += transactions.size();
+            } else {
+                skipped[0]++;
+            }
+        });
+        final var replayTime = Duration.ofNanos(System.nanoTime() - start);
+
+        return new RecoveryReport(snapshotSequence, snapshotTransactions, snapshotLoadTime,
+                replayed[0], skipped[0], replayTime);
+    }
+
+    public void start(Duration interval) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (Exception e) {
+                // keep the schedule going, the log still holds everything
+                logger.error("Could not write a ledger snapshot", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot of the current state and deletes what it makes obsolete.
+     *
+     * @return the last log sequence number covered by the snapshot
+     */
+    public synchronized long snapshot() throws IOException {
+        final long start = System.nanoTime();
+
+        // every record up to this sequence belongs to an account captured below, at or after that record
+        final long coveredSequence = writeAheadLog.lastSequence();
+        writeAheadLog.rollover();
+        final var accounts = repository.snapshot();
+
+        long lastSequence = coveredSequence;
+        long transactions = 0;
+        for (var account : accounts) {
+            lastSequence = Math.max(lastSequence, account.journalTicket());
+            transactions += account.transactions().size();
+        }
+        // never store a transaction that could still be lost from the log
+        writeAheadLog.awaitDurable(lastSequence);
+
+        final var file = store.write(coveredSequence, accounts);
+        store.deleteOlderThan(coveredSequence);
+        final int segments = writeAheadLog.deleteSegmentsCoveredBy(coveredSequence);
+
+        logger.info("Wrote snapshot {} with {} transactions of {} accounts in {} ms, deleted {} log segments",
+                file.getFileName(), transactions, accounts.size(),
+                Duration.ofNanos(System.nanoTime() - start).toMillis(), segments);
+        return coveredSequence;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,103 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary layout of a write-ahead log record, which holds one or more transactions of an account:
+ * <pre>
+ * int    payload length
+ * int    CRC32C of the payload
+ * short  account id length, then the account id (UTF-8)
+ * then, for each transaction up to the end of the payload:
+ *   short  transaction id length, then the transaction id (UTF-8)
+ *   long   amount in minor units
+ *   byte   amount scale
+ *   byte   transaction type
+ *   long   timestamp, seconds of the epoch (UTC)
+ *   int    timestamp, nanoseconds
+ * </pre>
+ * The checksum covers the whole record, so the transactions of a record are recovered all together or not at all.
+ */
+final class WalRecordCodec {
+
+    static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int FIXED_TRANSACTION_SIZE = Short.BYTES + Long.BYTES + 2 + Long.BYTES + Integer.BYTES;
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private WalRecordCodec() {
+    }
+
+    static byte[] encode(String accountId, List<Transaction> transactions) {
+        final byte[] account = utf8(accountId);
+        final byte[][] ids = new byte[transactions.size()][];
+        int payloadSize = Short.BYTES + account.length;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = utf8(transactions.get(i).getId());
+            payloadSize += FIXED_TRANSACTION_SIZE + ids[i].length;
+        }
+
+        final var buffer = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        buffer.putInt(payloadSize).putInt(0);
+        buffer.putShort((short) account.length).put(account);
+        for (int i = 0; i < ids.length; i++) {
+            final var transaction = transactions.get(i);
+            buffer.putShort((short) ids[i].length).put(ids[i]);
+            buffer.putLong(transaction.getAmount().minorUnits());
+            buffer.put((byte) transaction.getAmount().scale());
+            buffer.put((byte) transaction.getType().ordinal());
+            buffer.putLong(transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(transaction.getTimestamp().getNano());
+        }
+
+        final var crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_SIZE, payloadSize);
+        buffer.putInt(Integer.BYTES, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    static boolean isValid(ByteBuffer payload, int expectedCrc) {
+        final var crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue() == expectedCrc;
+    }
+
+    static void decode(ByteBuffer payload, BiConsumer<String, List<Transaction>> consumer) {
+        final var accountId = readString(payload);
+        final List<Transaction> transactions = new ArrayList<>(1);
+        while (payload.hasRemaining()) {
+            final var id = readString(payload);
+            final long minorUnits = payload.getLong();
+            final int scale = payload.get();
+            final var type = TYPES[payload.get()];
+            final var timestamp = LocalDateTime.ofEpochSecond(payload.getLong(), payload.getInt(), ZoneOffset.UTC);
+            transactions.add(new Transaction(id, new Money(minorUnits, scale), type, timestamp));
+        }
+
+        consumer.accept(accountId, transactions);
+    }
+
+    private static byte[] utf8(String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Value is too long to be stored: " + value.length() + " characters");
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
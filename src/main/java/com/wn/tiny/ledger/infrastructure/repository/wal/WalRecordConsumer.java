@@ -0,0 +1,16 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import com.wn.tiny.ledger.domain.Transaction;
+
+import java.util.List;
+
+/**
+ * Receives the records of a {@link WriteAheadLog} during recovery, in log order. All the transactions of a record
+ * share its sequence number.
+ */
+@FunctionalInterface
+public interface WalRecordConsumer {
+
+    void accept(long sequence, String accountId, List<Transaction> transactions);
+
+}
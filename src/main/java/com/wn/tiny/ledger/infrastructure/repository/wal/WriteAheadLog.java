@@ -0,0 +1,450 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.infrastructure.repository.LedgerStorageException;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * File-backed {@link TransactionJournal} that appends one binary record per journaled unit (see {@link WalRecordCodec}).
+ * <p>
+ * Writers only queue their record and get a log sequence number back. A single flusher thread writes everything
+ * queued so far with one {@link FileChannel#write} and, in {@link DurabilityMode#BATCH} mode, one fsync, then wakes
+ * the writers of that batch. While a batch is being flushed the next one builds up, so the number of fsyncs per second
+ * stays bounded by the disk while the number of transactions per fsync grows with the load.
+ * <p>
+ * The log is a directory of segment files named after the sequence number of their first record. A segment is sealed
+ * once it grows past the segment size or when {@link #rollover} is called, and sealed segments covered by a snapshot
+ * are removed with {@link #deleteSegmentsCoveredBy}.
+ * <p>
+ * Readers of the in-memory ledger only see a transaction once it is durable: the ledger publishes it after
+ * {@link TransactionJournal#awaitDurable} returns for its ticket, as described in {@link TransactionJournal}.
+ */
+public class WriteAheadLog implements TransactionJournal, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x544C5741; // "TLWA"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = Integer.BYTES * 2;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("wal-(\\d{20})\\.log");
+
+    private final Path directory;
+    private final DurabilityMode durabilityMode;
+    private final long fsyncIntervalNanos;
+    private final long segmentSize;
+    private final Thread flusher;
+
+    /* Guards the queue of records that are not written yet */
+    private final Object queueLock = new Object();
+    private List<byte[]> queued = new ArrayList<>();
+    private long lastQueuedSequence;
+    private boolean rolloverRequested;
+    private boolean closed;
+
+    /* Guards the progress reported to waiting writers. Not a monitor: waiting writers may be virtual threads, which
+       would pin their carrier thread while waiting on a monitor */
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progressed = progressLock.newCondition();
+    private long completedSequence;
+    private IOException failure;
+
+    /* Only used by the flusher once recovered */
+    private FileChannel segment;
+    private long segmentFirstSequence;
+    private long writtenSequence;
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private boolean unsynced;
+    private long lastFsyncNanos = System.nanoTime();
+
+    private WriteAheadLog(Path directory, DurabilityMode durabilityMode, Duration fsyncInterval, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.durabilityMode = durabilityMode;
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Opens the log stored in the given directory, creating it when it does not exist. Call {@link #recover} before
+     * appending.
+     */
+    public static WriteAheadLog open(Path directory, DurabilityMode durabilityMode, Duration fsyncInterval) throws IOException {
+        return open(directory, durabilityMode, fsyncInterval, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static WriteAheadLog open(Path directory, DurabilityMode durabilityMode, Duration fsyncInterval,
+                                     long segmentSize) throws IOException {
+        return new WriteAheadLog(directory, durabilityMode, fsyncInterval, segmentSize);
+    }
+
+    /**
+     * Reads every record of the log in order, then gets the log ready for appends. A torn or corrupted tail of the
+     * last segment, left by a crash in the middle of a write, is cut off; the writes it belonged to never returned.
+     *
+     * @param coveredSequence last sequence number covered by a snapshot, the segments before it may be gone and new
+     *                        records are numbered after it
+     * @return the number of records read
+     */
+    public long recover(long coveredSequence, WalRecordConsumer consumer) throws IOException {
+        final var segments = listSegments();
+        long sequence = coveredSequence;
+        long recovered = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            final var current = segments.get(i);
+            if (current.firstSequence() - 1 > sequence) {
+                throw new IOException("Write-ahead log records before " + current.path() + " are missing");
+            }
+            sequence = current.firstSequence() - 1;
+            try (var channel = FileChannel.open(current.path(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final long read = readSegment(current.path(), channel, sequence, i == segments.size() - 1, consumer);
+                sequence += read;
+                recovered += read;
+            }
+        }
+
+        final long lastSequence = Math.max(sequence, coveredSequence);
+        synchronized (queueLock) {
+            lastQueuedSequence = lastSequence;
+        }
+        progressLock.lock();
+        try {
+            completedSequence = lastSequence;
+        } finally {
+            progressLock.unlock();
+        }
+        writtenSequence = lastSequence;
+
+        if (segments.isEmpty() || sequence < coveredSequence) {
+            segment = createSegment(lastSequence + 1);
+        } else {
+            final var last = segments.get(segments.size() - 1);
+            segment = FileChannel.open(last.path(), StandardOpenOption.WRITE);
+            segment.position(segment.size());
+            segmentFirstSequence = last.firstSequence();
+        }
+        flusher.start();
+        return recovered;
+    }
+
+    @Override
+    public long append(String accountId, List<Transaction> transactions) {
+        final byte[] record = WalRecordCodec.encode(accountId, transactions);
+        if (record.length - WalRecordCodec.HEADER_SIZE > MAX_RECORD_SIZE) {
+            throw new LedgerStorageException("Too many transactions to journal together: " + transactions.size(), null);
+        }
+        synchronized (queueLock) {
+            if (closed) {
+                throw new LedgerStorageException("Write-ahead log is closed", null);
+            }
+            queued.add(record);
+            queueLock.notify();
+            return ++lastQueuedSequence;
+        }
+    }
+
+    @Override
+    public void awaitDurable(long ticket) {
+        progressLock.lock();
+        try {
+            while (completedSequence < ticket) {
+                if (failure != null) {
+                    throw new LedgerStorageException("Write-ahead log failed, the transaction may not be durable", failure);
+                }
+                progressed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LedgerStorageException("Interrupted while waiting for the write-ahead log", e);
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence number of the last record appended, durable or not
+     */
+    public long lastSequence() {
+        synchronized (queueLock) {
+            return lastQueuedSequence;
+        }
+    }
+
+    /**
+     * Seals the current segment, the next batch is written to a new one.
+     */
+    public void rollover() {
+        synchronized (queueLock) {
+            rolloverRequested = true;
+        }
+    }
+
+    /**
+     * Deletes the sealed segments that only hold records up to {@code sequence}. The last segment is always kept.
+     *
+     * @return the number of deleted segments
+     */
+    public int deleteSegmentsCoveredBy(long sequence) throws IOException {
+        final var segments = listSegments();
+        int deleted = 0;
+        // a segment ends right before the first record of the next one
+        for (int i = 0; i < segments.size() - 1 && segments.get(i + 1).firstSequence() - 1 <= sequence; i++) {
+            Files.deleteIfExists(segments.get(i).path());
+            deleted++;
+        }
+        return deleted;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes and fsyncs everything queued so far, then stops the flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (queueLock) {
+            closed = true;
+            queueLock.notify();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                List<byte[]> batch = null;
+                long batchSequence = 0;
+                boolean rollover = false;
+                synchronized (queueLock) {
+                    while (queued.isEmpty() && !closed && !isIntervalFsyncDue()) {
+                        waitForRecords();
+                    }
+                    if (!queued.isEmpty()) {
+                        batch = queued;
+                        batchSequence = lastQueuedSequence;
+                        queued = new ArrayList<>(batch.size());
+                        rollover = rolloverRequested;
+                        rolloverRequested = false;
+                    } else if (closed) {
+                        break;
+                    }
+                }
+
+                // I/O happens outside the lock, writers keep queueing the next batch meanwhile
+                if (batch == null) {
+                    fsync();
+                    continue;
+                }
+                // an empty segment is never sealed, the next one would have the same name
+                if ((rollover || segment.position() >= segmentSize) && writtenSequence >= segmentFirstSequence) {
+                    fsync();
+                    segment.close();
+                    segment = createSegment(writtenSequence + 1);
+                }
+                write(batch);
+                writtenSequence = batchSequence;
+                if (durabilityMode == DurabilityMode.BATCH || isIntervalFsyncDue()) {
+                    fsync();
+                }
+                complete(batchSequence, null);
+            }
+            if (durabilityMode != DurabilityMode.OS) {
+                fsync();
+            }
+        } catch (IOException e) {
+            logger.error("Write-ahead log in {} failed, no more transactions can be recorded", directory, e);
+            synchronized (queueLock) {
+                closed = true;
+            }
+            complete(0, e);
+        }
+    }
+
+    private boolean isIntervalFsyncDue() {
+        return durabilityMode == DurabilityMode.INTERVAL && unsynced
+                && System.nanoTime() - lastFsyncNanos >= fsyncIntervalNanos;
+    }
+
+    /* Called with the queue lock held */
+    private void waitForRecords() throws IOException {
+        try {
+            if (durabilityMode == DurabilityMode.INTERVAL && unsynced) {
+                final long remainingNanos = fsyncIntervalNanos - (System.nanoTime() - lastFsyncNanos);
+                queueLock.wait(Math.max(1, remainingNanos / 1_000_000));
+            } else {
+                queueLock.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Write-ahead log flusher was interrupted", e);
+        }
+    }
+
+    private void write(List<byte[]> batch) throws IOException {
+        int size = 0;
+        for (var record : batch) {
+            size += record.length;
+        }
+        if (writeBuffer.capacity() < size) {
+            writeBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+        }
+        writeBuffer.clear();
+        for (var record : batch) {
+            writeBuffer.put(record);
+        }
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            segment.write(writeBuffer);
+        }
+        unsynced = true;
+    }
+
+    private void fsync() throws IOException {
+        if (unsynced) {
+            segment.force(false);
+            unsynced = false;
+        }
+        lastFsyncNanos = System.nanoTime();
+    }
+
+    private void complete(long sequence, IOException error) {
+        progressLock.lock();
+        try {
+            if (error != null) {
+                failure = error;
+            } else {
+                completedSequence = sequence;
+            }
+            progressed.signalAll();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of valid records of the segment
+     */
+    private long readSegment(Path path, FileChannel channel, long previousSequence, boolean lastSegment,
+                             WalRecordConsumer consumer) throws IOException {
+        readFileHeader(path, channel);
+
+        final long end = channel.size();
+        long position = FILE_HEADER_SIZE;
+        long sequence = previousSequence;
+        final var header = ByteBuffer.allocate(WalRecordCodec.HEADER_SIZE);
+        while (position < end) {
+            header.clear();
+            if (!readFully(channel, header, position)) {
+                break;
+            }
+            final int payloadSize = header.getInt(0);
+            final int crc = header.getInt(Integer.BYTES);
+            if (payloadSize <= 0 || payloadSize > MAX_RECORD_SIZE) {
+                break;
+            }
+            final var payload = ByteBuffer.allocate(payloadSize);
+            if (!readFully(channel, payload, position + WalRecordCodec.HEADER_SIZE)) {
+                break;
+            }
+            payload.flip();
+            if (!WalRecordCodec.isValid(payload, crc)) {
+                break;
+            }
+            final long recordSequence = ++sequence;
+            WalRecordCodec.decode(payload, (accountId, transactions) -> consumer.accept(recordSequence, accountId, transactions));
+            position += WalRecordCodec.HEADER_SIZE + payloadSize;
+        }
+
+        if (position < end) {
+            if (!lastSegment) {
+                // later segments were written after this one was fsynced, so this is not a torn write
+                throw new IOException("Write-ahead log segment " + path + " is corrupted at byte " + position);
+            }
+            logger.warn("Discarding {} bytes of incomplete records at the end of {}", end - position, path);
+            channel.truncate(position);
+            channel.force(true);
+        }
+        return sequence - previousSequence;
+    }
+
+    private FileChannel createSegment(long firstSequence) throws IOException {
+        final var path = directory.resolve(segmentName(firstSequence));
+        final var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        final var header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        segmentFirstSequence = firstSequence;
+        return channel;
+    }
+
+    private static void readFileHeader(Path path, FileChannel channel) throws IOException {
+        final var header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        if (!readFully(channel, header, 0) || header.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a ledger write-ahead log");
+        }
+        if (header.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported write-ahead log version " + header.getInt(Integer.BYTES) + " in " + path);
+        }
+    }
+
+    private List<Segment> listSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files
+                    .map(path -> {
+                        final var matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                        return matcher.matches() ? new Segment(path, Long.parseLong(matcher.group(1))) : null;
+                    })
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingLong(Segment::firstSequence))
+                    .toList();
+        }
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("wal-%020d.log", firstSequence);
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Segment(Path path, long firstSequence) {
+    }
+}
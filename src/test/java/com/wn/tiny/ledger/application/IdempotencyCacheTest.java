@@ -0,0 +1,184 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("IdempotencyCache Tests")
+class IdempotencyCacheTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final String ACCOUNT = "account-1";
+    private static final NewTransaction DEPOSIT = new NewTransaction(Money.of(new BigDecimal("10")), TransactionType.DEPOSIT);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger recorded = new AtomicInteger();
+
+    @Test
+    @DisplayName("should record once and return the first transaction to retries")
+    void givenUsedKey_whenExecuteAgain_shouldReturnFirstTransaction() {
+        // given
+        var cache = new IdempotencyCache(10, Duration.ofMinutes(1), clock::get);
+        var first = cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record);
+
+        // when
+        var retry = cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record);
+        var otherAccount = cache.execute("account-2", "key-1", DEPOSIT, this::record);
+
+        // then
+        assertThat(retry).isSameAs(first);
+        assertThat(otherAccount).isNotSameAs(first);
+        assertThat(recorded).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("should reject a key used again for a different transaction")
+    void givenUsedKey_whenExecuteWithDifferentRequest_shouldThrow() {
+        // given
+        var cache = new IdempotencyCache(10, Duration.ofMinutes(1), clock::get);
+        cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record);
+        var withdrawal = new NewTransaction(Money.of(new BigDecimal("10")), TransactionType.WITHDRAWAL);
+
+        // when / then
+        assertThatThrownBy(() -> cache.execute(ACCOUNT, "key-1", withdrawal, this::record))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Idempotency key was already used for a different transaction");
+        assertThat(recorded).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("should forget keys once expired or when over the maximum number of keys")
+    void givenExpiredOrEvictedKeys_whenExecuteAgain_shouldRecordAgain() {
+        // given
+        var cache = new IdempotencyCache(2, Duration.ofMinutes(1), clock::get);
+        var first = cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record);
+        cache.execute(ACCOUNT, "key-2", DEPOSIT, this::record);
+        cache.execute(ACCOUNT, "key-3", DEPOSIT, this::record);
+
+        // when
+        var evicted = cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record);
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        var afterExpiry = cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record);
+
+        // then
+        assertThat(evicted).isNotSameAs(first);
+        assertThat(afterExpiry).isNotSameAs(evicted);
+        assertThat(recorded).hasValue(5);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should not remember a failed attempt")
+    void givenFailedAttempt_whenExecuteAgain_shouldRecordAgain() {
+        // given
+        var cache = new IdempotencyCache(10, Duration.ofMinutes(1), clock::get);
+        assertThatThrownBy(() -> cache.execute(ACCOUNT, "key-1", DEPOSIT, () -> {
+            throw new InvalidTransactionException("Insufficient funds for withdrawal");
+        })).isInstanceOf(InvalidTransactionException.class);
+
+        // when
+        var transaction = cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record);
+
+        // then
+        assertThat(transaction).isNotNull();
+        assertThat(recorded).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("should make concurrent attempts with the same key wait for the first one")
+    void givenAttemptInProgress_whenExecuteConcurrently_shouldWaitForIt() throws Exception {
+        // given
+        var cache = new IdempotencyCache(10, Duration.ofMinutes(1));
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Transaction> first = executor.submit(() -> cache.execute(ACCOUNT, "key-1", DEPOSIT, () -> {
+                started.countDown();
+                await(release);
+                return record();
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // when
+            Future<Transaction> retry1 = executor.submit(() -> cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record));
+            Future<Transaction> retry2 = executor.submit(() -> cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record));
+            Thread.sleep(100);
+            assertThat(retry1.isDone()).isFalse();
+            release.countDown();
+
+            // then
+            assertThat(retry1.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+            assertThat(retry2.get(5, TimeUnit.SECONDS)).isSameAs(first.get());
+            assertThat(recorded).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("should keep a key still being recorded when full, so a concurrent retry waits for it")
+    void givenAttemptInProgressAtCapacity_whenOtherKeyAndRetry_shouldNotRecordTwice() throws Exception {
+        // given, a cache holding a single key, taken by an attempt still in progress
+        var cache = new IdempotencyCache(1, Duration.ofMinutes(1));
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Transaction> first = executor.submit(() -> cache.execute(ACCOUNT, "key-1", DEPOSIT, () -> {
+                started.countDown();
+                await(release);
+                return record();
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // when
+            var other = cache.execute(ACCOUNT, "key-2", DEPOSIT, this::record);
+            Future<Transaction> retry = executor.submit(() -> cache.execute(ACCOUNT, "key-1", DEPOSIT, this::record));
+            Thread.sleep(100);
+            assertThat(retry.isDone()).isFalse();
+            release.countDown();
+
+            // then
+            assertThat(retry.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+            assertThat(other).isNotSameAs(first.get());
+            assertThat(recorded).hasValue(2);
+            assertThat(cache.size()).isEqualTo(2);
+            cache.execute(ACCOUNT, "key-3", DEPOSIT, this::record);
+            assertThat(cache.size()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Transaction record() {
+        recorded.incrementAndGet();
+        return new Transaction(idGenerator, DEPOSIT.amount(), DEPOSIT.type());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
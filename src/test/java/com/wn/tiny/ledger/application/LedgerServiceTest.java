@@ -1,12 +1,18 @@
 package com.wn.tiny.ledger.application;
 
 import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionNotFoundException;
 import com.wn.tiny.ledger.domain.TransactionType;
 import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
@@ -14,35 +20,39 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 @DisplayName("LedgerService Tests")
 class LedgerServiceTest {
 
+    private static final String ACCOUNT = "account-1";
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
     @Test
     @DisplayName("should return a valid balance")
     void givenValidValuesToCreateTransaction_whenGetBalance_shouldGetValidBalance() {
         // given
-        var ledgerService = new LedgerService(new AccountRepository());
-        var amount = new BigDecimal("100");
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        var amount = Money.of(new BigDecimal("100"));
         var type = TransactionType.DEPOSIT;
 
         // when / then
-        ledgerService.recordTransaction(amount, type);
-        assertThat(ledgerService.getBalance()).isEqualByComparingTo(amount.toString());
+        ledgerService.recordTransaction(ACCOUNT, amount, type);
+        assertThat(ledgerService.getBalance(ACCOUNT)).isEqualTo(amount);
 
-        amount = new BigDecimal("50");
+        amount = Money.of(new BigDecimal("50"));
         type = TransactionType.WITHDRAWAL;
 
-        ledgerService.recordTransaction(amount, type);
-        assertThat(ledgerService.getBalance()).isEqualByComparingTo("50");
+        ledgerService.recordTransaction(ACCOUNT, amount, type);
+        assertThat(ledgerService.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("50");
     }
 
     @Test
     @DisplayName("should throw exception Insufficient funds for withdrawal")
     void  givenAmountWithNoFunds_ShouldThrowAnException() {
         // given
-        var ledgerService = new LedgerService(new AccountRepository());
-        var amount = new BigDecimal("100");
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        var amount = Money.of(new BigDecimal("100"));
         var type = TransactionType.WITHDRAWAL;
 
         // when / then
-        assertThatThrownBy(() -> ledgerService.recordTransaction(amount, type))
+        assertThatThrownBy(() -> ledgerService.recordTransaction(ACCOUNT, amount, type))
                 .isInstanceOf(InvalidTransactionException.class)
                 .hasMessage("Insufficient funds for withdrawal");
 
@@ -52,17 +62,151 @@ class LedgerServiceTest {
     @DisplayName("should return a valid transaction history")
     void givenValidDataToCreateTransaction_whenCallGetTransaction_shouldReturnTheTransaction(){
         // given
-        var ledgerService = new LedgerService(new AccountRepository());
-        var amount = new BigDecimal("100");
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        var amount = Money.of(new BigDecimal("100"));
         var type = TransactionType.DEPOSIT;
 
         // when
-        ledgerService.recordTransaction(amount, type);
+        ledgerService.recordTransaction(ACCOUNT, amount, type);
+
+        // then
+        assertThat(ledgerService.getTransactionHistory(ACCOUNT)).hasSize(1);
+        assertThat(ledgerService.getTransactionHistory(ACCOUNT).get(0).getAmount()).isEqualTo(amount);
+        assertThat(ledgerService.getTransactionHistory(ACCOUNT).get(0).getType()).isEqualTo(type);
+    }
+
+    @Test
+    @DisplayName("should find a recorded transaction by its reference")
+    void givenRecordedTransaction_whenFindTransaction_shouldReturnIt() {
+        // given
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        var transaction = ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal("10")), TransactionType.DEPOSIT);
+
+        // when / then
+        assertThat(ledgerService.findTransaction(ACCOUNT, transaction.getId())).isSameAs(transaction);
+        assertThatThrownBy(() -> ledgerService.findTransaction(ACCOUNT, "unknown"))
+                .isInstanceOf(TransactionNotFoundException.class)
+                .hasMessage("Transaction not found: unknown");
+    }
+
+    @Test
+    @DisplayName("should return stable pages while transactions keep being recorded")
+    void givenRecordedTransactions_whenPagingHistory_shouldReturnStablePages() {
+        // given
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        for (int i = 1; i <= 5; i++) {
+            ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal(i)), TransactionType.DEPOSIT);
+        }
+
+        // when
+        var firstPage = ledgerService.getTransactionHistory(ACCOUNT, null, 2);
+        ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal("6")), TransactionType.DEPOSIT);
+        var secondPage = ledgerService.getTransactionHistory(ACCOUNT, firstPage.nextCursor(), 2);
+        var lastPage = ledgerService.getTransactionHistory(ACCOUNT, secondPage.nextCursor(), 10);
+
+        // then
+        assertThat(firstPage.transactions()).extracting(Transaction::getAmount)
+                .containsExactly(Money.of(new BigDecimal("1")), Money.of(new BigDecimal("2")));
+        assertThat(secondPage.transactions()).extracting(Transaction::getAmount)
+                .containsExactly(Money.of(new BigDecimal("3")), Money.of(new BigDecimal("4")));
+        assertThat(lastPage.transactions()).extracting(Transaction::getAmount)
+                .containsExactly(Money.of(new BigDecimal("5")), Money.of(new BigDecimal("6")));
+        assertThat(lastPage.nextCursor()).isNull();
+    }
+
+    @Test
+    @DisplayName("should reject a malformed history cursor")
+    void givenMalformedCursor_whenPagingHistory_shouldThrowAnException() {
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+
+        assertThatThrownBy(() -> ledgerService.getTransactionHistory(ACCOUNT, "bm90LWEtY3Vyc29y", 10))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Invalid history cursor");
+    }
+
+    @Test
+    @DisplayName("should keep balances and histories of different accounts apart")
+    void givenTransactionsOnTwoAccounts_whenGetBalance_shouldReturnEachAccountBalance() {
+        // given
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        var transaction = ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal("100")), TransactionType.DEPOSIT);
+        ledgerService.recordTransaction("account-2", Money.of(new BigDecimal("30")), TransactionType.DEPOSIT);
+
+        // when / then
+        assertThat(ledgerService.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("100");
+        assertThat(ledgerService.getBalance("account-2").toBigDecimal()).isEqualByComparingTo("30");
+        assertThat(ledgerService.getBalance("unknown").toBigDecimal()).isEqualByComparingTo("0");
+        assertThat(ledgerService.getTransactionHistory("account-2")).hasSize(1);
+        assertThatThrownBy(() -> ledgerService.findTransaction("account-2", transaction.getId()))
+                .isInstanceOf(TransactionNotFoundException.class);
+        assertThatThrownBy(() -> ledgerService.recordTransaction("account-2", Money.of(new BigDecimal("31")), TransactionType.WITHDRAWAL))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Insufficient funds for withdrawal");
+    }
+
+    @Test
+    @DisplayName("should record a batch with a single balance update")
+    void givenValidBatch_whenRecordTransactions_shouldRecordThemInOrder() {
+        // given
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        var batch = List.of(
+                new NewTransaction(Money.of(new BigDecimal("100")), TransactionType.DEPOSIT),
+                new NewTransaction(Money.of(new BigDecimal("100")), TransactionType.WITHDRAWAL),
+                new NewTransaction(Money.of(new BigDecimal("7.5")), TransactionType.DEPOSIT));
+
+        // when
+        var transactions = ledgerService.recordTransactions(ACCOUNT, batch);
 
         // then
-        assertThat(ledgerService.getTransactionHistory()).hasSize(1);
-        assertThat(ledgerService.getTransactionHistory().get(0).getAmount()).isEqualByComparingTo(amount);
-        assertThat(ledgerService.getTransactionHistory().get(0).getType()).isEqualTo(type);
+        assertThat(transactions).extracting(Transaction::getType)
+                .containsExactly(TransactionType.DEPOSIT, TransactionType.WITHDRAWAL, TransactionType.DEPOSIT);
+        assertThat(ledgerService.getTransactionHistory(ACCOUNT)).containsExactlyElementsOf(transactions);
+        assertThat(ledgerService.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("7.5");
+    }
+
+    @Test
+    @DisplayName("should reject the whole batch when the balance goes negative at any point")
+    void givenBatchThatOverdraws_whenRecordTransactions_shouldRecordNothing() {
+        // given
+        var ledgerService = new LedgerService(new AccountRepository(), idGenerator);
+        ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal("10")), TransactionType.DEPOSIT);
+        var batch = List.of(
+                new NewTransaction(Money.of(new BigDecimal("10")), TransactionType.WITHDRAWAL),
+                new NewTransaction(Money.of(new BigDecimal("1")), TransactionType.WITHDRAWAL),
+                new NewTransaction(Money.of(new BigDecimal("50")), TransactionType.DEPOSIT));
+
+        // when / then
+        assertThatThrownBy(() -> ledgerService.recordTransactions(ACCOUNT, batch))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Insufficient funds for withdrawal at index 1");
+        assertThat(ledgerService.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("10");
+        assertThat(ledgerService.getTransactionHistory(ACCOUNT)).hasSize(1);
+        assertThatThrownBy(() -> ledgerService.recordTransactions(ACCOUNT, List.of()))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Batch must contain at least one transaction");
     }
 
+    @Test
+    @DisplayName("should time recorded transactions by type and count rejected withdrawals")
+    void givenRecordedAndRejectedTransactions_whenRecordTransaction_shouldUpdateMetrics() {
+        // given
+        var registry = new SimpleMeterRegistry();
+        var ledgerService = new LedgerService(new AccountRepository(),
+                new IdempotencyCache(IdempotencyCache.DEFAULT_MAX_KEYS, IdempotencyCache.DEFAULT_TTL), registry, idGenerator);
+
+        // when
+        ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal("10")), TransactionType.DEPOSIT);
+        ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal("4")), TransactionType.WITHDRAWAL);
+        assertThatThrownBy(() -> ledgerService.recordTransaction(ACCOUNT, Money.of(new BigDecimal("7")), TransactionType.WITHDRAWAL))
+                .isInstanceOf(InvalidTransactionException.class);
+
+        // then
+        assertThat(registry.get(LedgerMetrics.RECORD_TIMER).tags("type", "DEPOSIT", "outcome", "recorded").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get(LedgerMetrics.RECORD_TIMER).tags("type", "WITHDRAWAL", "outcome", "recorded").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get(LedgerMetrics.RECORD_TIMER).tags("type", "WITHDRAWAL", "outcome", "rejected").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get(LedgerMetrics.REJECTED_WITHDRAWALS).counter().count()).isEqualTo(1);
+    }
 }
@@ -0,0 +1,193 @@
+package com.wn.tiny.ledger.application;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("TransactionFeed Tests")
+class TransactionFeedTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final String ACCOUNT = "account-1";
+
+    private final AccountRepository repository = new AccountRepository();
+    private TransactionFeed feed;
+
+    @AfterEach
+    void closeFeed() {
+        feed.close();
+    }
+
+    @Test
+    @DisplayName("should push recorded transactions from the requested sequence with the balance after each")
+    void subscribe_fromSequence_pushesHistoryThenNewTransactions() throws InterruptedException {
+        // given
+        feed = new TransactionFeed(repository, 100, Duration.ofSeconds(15));
+        deposit("10");
+        deposit("20");
+        var listener = new RecordingListener();
+
+        // when
+        feed.subscribe(ACCOUNT, 1L, TransactionFeed.Overflow.DISCONNECT, listener);
+        assertThat(listener.next()).isEqualTo("transaction 1 30");
+        deposit("5");
+        feed.published(ACCOUNT);
+
+        // then
+        assertThat(listener.next()).isEqualTo("transaction 2 35");
+    }
+
+    @Test
+    @DisplayName("should only push the transactions recorded after subscribing when no sequence is given")
+    void subscribe_withoutSequence_pushesNewTransactionsOnly() throws InterruptedException {
+        // given
+        feed = new TransactionFeed(repository, 100, Duration.ofSeconds(15));
+        deposit("10");
+        var listener = new RecordingListener();
+
+        // when
+        feed.subscribe(ACCOUNT, null, TransactionFeed.Overflow.DISCONNECT, listener);
+        deposit("1");
+        feed.published(ACCOUNT);
+
+        // then
+        assertThat(listener.next()).isEqualTo("transaction 1 11");
+    }
+
+    @Test
+    @DisplayName("should disconnect a subscriber that is too far behind and tell where to resume")
+    void subscribe_beyondMaxLag_disconnects() throws InterruptedException {
+        // given
+        feed = new TransactionFeed(repository, 2, Duration.ofSeconds(15));
+        for (int i = 0; i < 5; i++) {
+            deposit("1");
+        }
+        var listener = new RecordingListener();
+
+        // when
+        feed.subscribe(ACCOUNT, 0L, TransactionFeed.Overflow.DISCONNECT, listener);
+
+        // then
+        assertThat(listener.next()).isEqualTo("overflow 0");
+        assertThat(listener.next()).isEqualTo("closed");
+        assertThat(feed.subscriberCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("should skip a subscriber that is too far behind to the end of the history")
+    void subscribe_beyondMaxLagWithSkip_skipsAhead() throws InterruptedException {
+        // given
+        feed = new TransactionFeed(repository, 2, Duration.ofSeconds(15));
+        for (int i = 0; i < 5; i++) {
+            deposit("1");
+        }
+        var listener = new RecordingListener();
+
+        // when
+        feed.subscribe(ACCOUNT, 0L, TransactionFeed.Overflow.SKIP, listener);
+        assertThat(listener.next()).isEqualTo("skipped 0 5");
+        deposit("1");
+        feed.published(ACCOUNT);
+
+        // then
+        assertThat(listener.next()).isEqualTo("transaction 5 6");
+    }
+
+    @Test
+    @DisplayName("should end the subscription when it is closed")
+    void close_endsSubscription() throws InterruptedException {
+        // given
+        feed = new TransactionFeed(repository, 100, Duration.ofMillis(50));
+        var listener = new RecordingListener();
+        var subscription = feed.subscribe(ACCOUNT, null, TransactionFeed.Overflow.DISCONNECT, listener);
+        assertThat(listener.next()).isEqualTo("idle");
+
+        // when
+        subscription.close();
+
+        // then
+        String event;
+        do {
+            event = listener.next();
+        } while ("idle".equals(event));
+        assertThat(event).isEqualTo("closed");
+        assertThat(feed.subscriberCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("should refuse subscriptions past the maximum until one ends")
+    void subscribe_beyondMaxSubscribers_isRefused() throws InterruptedException {
+        // given
+        feed = new TransactionFeed(repository, 100, Duration.ofSeconds(15), 1, null);
+        var listener = new RecordingListener();
+        var subscription = feed.subscribe(ACCOUNT, null, TransactionFeed.Overflow.DISCONNECT, listener);
+
+        // when
+        assertThatThrownBy(() -> feed.subscribe(ACCOUNT, null, TransactionFeed.Overflow.DISCONNECT,
+                new RecordingListener()))
+                .isInstanceOf(FeedUnavailableException.class);
+        subscription.close();
+        assertThat(listener.next()).isEqualTo("closed");
+
+        // then
+        var next = new RecordingListener();
+        feed.subscribe(ACCOUNT, null, TransactionFeed.Overflow.DISCONNECT, next);
+        deposit("1");
+        feed.published(ACCOUNT);
+        assertThat(next.next()).isEqualTo("transaction 0 1");
+    }
+
+    private void deposit(String amount) {
+        repository.addTransaction(ACCOUNT, new Transaction(idGenerator, Money.of(new BigDecimal(amount)), TransactionType.DEPOSIT),
+                balance -> true);
+    }
+
+    private static final class RecordingListener implements TransactionFeed.Listener {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        String next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onTransaction(long sequence, Transaction transaction, Money balance) {
+            events.add("transaction " + sequence + " " + balance.toBigDecimal());
+        }
+
+        @Override
+        public void onSkipped(long fromSequence, long toSequence) {
+            events.add("skipped " + fromSequence + " " + toSequence);
+        }
+
+        @Override
+        public void onOverflow(long nextSequence) {
+            events.add("overflow " + nextSequence);
+        }
+
+        @Override
+        public void onIdle() {
+            events.add("idle");
+        }
+
+        @Override
+        public void onClosed() {
+            events.add("closed");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.wn.tiny.ledger.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Money Domain Tests")
+class MoneyTest {
+
+    @Test
+    @DisplayName("should convert a decimal amount to minor units")
+    void of_withDecimalAmount_shouldUseMinorUnits() {
+        assertThat(Money.of(new BigDecimal("150.5")).minorUnits()).isEqualTo(15_050);
+        assertThat(Money.of(new BigDecimal("150.500")).minorUnits()).isEqualTo(15_050);
+        assertThat(Money.of(new BigDecimal("1E+2")).minorUnits()).isEqualTo(10_000);
+        assertThat(Money.of(new BigDecimal("7"), 0).minorUnits()).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("should reject more decimal places than the scale allows")
+    void of_withTooManyDecimals_shouldThrowException() {
+        assertThatThrownBy(() -> Money.of(new BigDecimal("0.001")))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Amount must not have more than 2 decimal places");
+    }
+
+    @Test
+    @DisplayName("should reject amounts that do not fit in minor units")
+    void of_withHugeAmount_shouldThrowException() {
+        assertThatThrownBy(() -> Money.of(new BigDecimal("100000000000000000000")))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Amount is out of range");
+    }
+
+    @Test
+    @DisplayName("should fail instead of overflowing")
+    void plus_whenOverflowing_shouldThrowException() {
+        var max = Money.ofMinor(Long.MAX_VALUE);
+
+        assertThatThrownBy(() -> max.plus(Money.ofMinor(1)))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Amount is out of range");
+        assertThatThrownBy(() -> Money.ofMinor(Long.MIN_VALUE).negate())
+                .isInstanceOf(InvalidTransactionException.class);
+    }
+
+    @Test
+    @DisplayName("should add and subtract amounts of the same scale")
+    void plusAndMinus_withSameScale_shouldComputeResult() {
+        var amount = Money.ofMinor(1_000).plus(Money.ofMinor(250)).minus(Money.ofMinor(50));
+
+        assertThat(amount).isEqualTo(Money.ofMinor(1_200));
+        assertThatThrownBy(() -> amount.plus(new Money(1, 3))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("should convert back to a decimal without trailing zeros")
+    void toBigDecimal_shouldStripTrailingZeros() {
+        assertThat(Money.ofMinor(12_500).toBigDecimal()).isEqualTo(new BigDecimal("125"));
+        assertThat(Money.ofMinor(15_050).toBigDecimal()).isEqualTo(new BigDecimal("150.5"));
+        assertThat(Money.ofMinor(0).toBigDecimal()).isEqualTo(new BigDecimal("0"));
+        assertThat(Money.ofMinor(-1).toBigDecimal()).isEqualTo(new BigDecimal("-0.01"));
+        assertThat(Money.ofMinor(15_050)).hasToString("150.50");
+    }
+}
@@ -0,0 +1,96 @@
+package com.wn.tiny.ledger.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("SnowflakeIdGenerator Tests")
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    @DisplayName("should generate increasing ids that sort as strings and decode to their time")
+    void nextId_isTimeOrderedAndSortable() {
+        // given
+        var now = Instant.parse("2026-10-17T12:00:00Z").toEpochMilli();
+        var clock = new AtomicLong(now);
+        var generator = new SnowflakeIdGenerator(7, clock::get);
+
+        // when
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(generator.nextId());
+            if (i % 1000 == 0) {
+                clock.addAndGet(1);
+            }
+        }
+
+        // then
+        assertThat(ids).isSorted().doesNotHaveDuplicates().allMatch(id -> id.length() == SnowflakeIdGenerator.ID_LENGTH);
+        assertThat(SnowflakeIdGenerator.timestampOf(ids.get(0))).isEqualTo(now);
+    }
+
+    @Test
+    @DisplayName("should keep increasing when the clock goes back")
+    void nextId_whenClockGoesBack_keepsIncreasing() {
+        // given
+        var clock = new AtomicLong(Instant.parse("2026-10-17T12:00:00Z").toEpochMilli());
+        var generator = new SnowflakeIdGenerator(1, clock::get);
+        var before = generator.nextId();
+
+        // when
+        clock.addAndGet(-60_000);
+        var after = generator.nextId();
+
+        // then
+        assertThat(after).isGreaterThan(before);
+    }
+
+    @Test
+    @DisplayName("should never generate the same id on different nodes or threads")
+    void nextId_concurrentlyOnTwoNodes_isUnique() throws InterruptedException {
+        // given
+        var generators = List.of(new SnowflakeIdGenerator(1), new SnowflakeIdGenerator(2));
+        var ids = ConcurrentHashMap.<String>newKeySet();
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // when
+        for (int t = 0; t < 8; t++) {
+            var generator = generators.get(t % 2);
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20_000; i++) {
+                    ids.add(generator.nextId());
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        // then
+        assertThat(ids).hasSize(8 * 20_000);
+    }
+
+    @Test
+    @DisplayName("should reject a node id that does not fit in 10 bits")
+    void constructor_withInvalidNodeId_shouldThrow() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SnowflakeIdGenerator.timestampOf("not-an-id"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
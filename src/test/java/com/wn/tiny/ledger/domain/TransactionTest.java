@@ -14,27 +14,30 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 @DisplayName("Transaction Domain Tests")
 class TransactionTest {
 
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
     @Test
     @DisplayName("should create a valid transaction successfully")
     void constructor_withValidArgs_shouldCreateInstance() {
         // Given
-        BigDecimal amount = new BigDecimal("100.00");
+        Money amount = Money.of(new BigDecimal("100.00"));
         TransactionType type = TransactionType.DEPOSIT;
 
         // When
-        Transaction transaction = new Transaction(amount, type);
+        Transaction transaction = new Transaction(idGenerator, amount, type);
 
         // Then
         assertThat(transaction.getId()).isNotNull();
         assertThat(transaction.getTimestamp()).isNotNull();
-        assertThat(transaction.getAmount()).isEqualByComparingTo(amount);
+        assertThat(transaction.getAmount()).isEqualTo(amount);
+        assertThat(transaction.getBalanceDelta()).isEqualTo(10_000);
         assertThat(transaction.getType()).isEqualTo(type);
     }
 
     @Test
     @DisplayName("should throw exception when transaction type is null")
     void constructor_withNullType_shouldThrowException() {
-        assertThatThrownBy(() -> new Transaction(new BigDecimal("50"), null))
+        assertThatThrownBy(() -> new Transaction(idGenerator, Money.of(new BigDecimal("50")), null))
                 .isInstanceOf(InvalidTransactionException.class)
                 .hasMessage("Transaction type must be specified");
     }
@@ -44,8 +47,26 @@ class TransactionTest {
     @NullSource
     @DisplayName("should throw exception for invalid amount (null, zero, or negative)")
     void constructor_withInvalidAmount_shouldThrowException(BigDecimal invalidAmount) {
-        assertThatThrownBy(() -> new Transaction(invalidAmount, TransactionType.DEPOSIT))
+        Money amount = invalidAmount == null ? null : Money.of(invalidAmount);
+
+        assertThatThrownBy(() -> new Transaction(idGenerator, amount, TransactionType.DEPOSIT))
                 .isInstanceOf(InvalidTransactionException.class)
                 .hasMessage("Transaction amount must be positive");
     }
+
+    @Test
+    @DisplayName("should reject an amount that does not use the ledger scale")
+    void constructor_withOtherScale_shouldThrowException() {
+        assertThatThrownBy(() -> new Transaction(idGenerator, new Money(100, 3), TransactionType.DEPOSIT))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Transaction amount must have the ledger scale");
+    }
+
+    @Test
+    @DisplayName("should report a withdrawal as a negative balance change")
+    void getBalanceDelta_forWithdrawal_isNegative() {
+        var transaction = new Transaction(idGenerator, Money.of(new BigDecimal("2.5")), TransactionType.WITHDRAWAL);
+
+        assertThat(transaction.getBalanceDelta()).isEqualTo(-250);
+    }
 }
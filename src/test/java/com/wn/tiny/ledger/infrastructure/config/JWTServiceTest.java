@@ -0,0 +1,106 @@
+package com.wn.tiny.ledger.infrastructure.config;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("JWTService Tests")
+class JWTServiceTest {
+
+    private static final String SECRET = "sLFegVQsWldfJ1UOwABlhVYUT2ss5hx9";
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    @DisplayName("should verify a token once and serve its authentication from the cache afterwards")
+    void givenVerifiedToken_whenGetAuthenticationAgain_shouldReturnCachedAuthentication() {
+        // given
+        var jwtService = new JWTService(SECRET, 10, clock);
+        var token = jwtService.generateToken("aUser", "jwt-1");
+
+        // when
+        var first = jwtService.getAuthentication(token);
+        var second = jwtService.getAuthentication(token);
+
+        // then
+        assertThat(first.getName()).isEqualTo("aUser");
+        assertThat(first.getDetails()).isEqualTo("jwt-1");
+        assertThat(second).isSameAs(first);
+        assertThat(jwtService.cachedTokens()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should reject a cached token once it has expired")
+    void givenCachedToken_whenExpired_shouldThrow() {
+        // given
+        var jwtService = new JWTService(SECRET, 10, clock);
+        var token = jwtService.generateToken("aUser", "jwt-1");
+        jwtService.getAuthentication(token);
+
+        // when
+        clock.advance(Duration.ofHours(1).plusSeconds(1));
+
+        // then
+        assertThatThrownBy(() -> jwtService.getAuthentication(token)).isInstanceOf(ExpiredJwtException.class);
+        assertThat(jwtService.cachedTokens()).isZero();
+    }
+
+    @Test
+    @DisplayName("should not cache tokens that fail verification, and evict the least recently used token when full")
+    void givenInvalidOrTooManyTokens_whenGetAuthentication_shouldEvictLeastRecentlyUsed() {
+        // given
+        var jwtService = new JWTService(SECRET, 2, clock);
+        var otherService = new JWTService("another-secret-of-at-least-32-bytes", 2, clock);
+        var forged = otherService.generateToken("aUser", "jwt-0");
+        var first = jwtService.generateToken("aUser", "jwt-1");
+        var second = jwtService.generateToken("aUser", "jwt-2");
+        var third = jwtService.generateToken("aUser", "jwt-3");
+
+        // when
+        assertThatThrownBy(() -> jwtService.getAuthentication(forged)).isInstanceOf(SignatureException.class);
+        var firstAuthentication = jwtService.getAuthentication(first);
+        var secondAuthentication = jwtService.getAuthentication(second);
+        jwtService.getAuthentication(first);
+        var thirdAuthentication = jwtService.getAuthentication(third);
+
+        // then
+        assertThat(jwtService.cachedTokens()).isEqualTo(2);
+        assertThat(jwtService.getAuthentication(third)).isSameAs(thirdAuthentication);
+        assertThat(jwtService.getAuthentication(first)).isSameAs(firstAuthentication);
+        assertThat(jwtService.getAuthentication(second)).isNotSameAs(secondAuthentication);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
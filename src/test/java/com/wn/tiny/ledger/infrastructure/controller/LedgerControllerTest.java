@@ -1,28 +1,40 @@
 package com.wn.tiny.ledger.infrastructure.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wn.tiny.ledger.domain.TransactionType;
 import com.wn.tiny.ledger.infrastructure.controller.dto.TransactionRequest;
+import com.wn.tiny.ledger.infrastructure.controller.dto.TransactionResponse;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureObservability
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 @DisplayName("LedgerController Integration Tests")
 @ActiveProfiles("local")
@@ -120,6 +132,332 @@ class LedgerControllerTest {
                 .andExpect(jsonPath("$.balance", is(50)));
     }
 
+    @Test
+    @DisplayName("POST /transactions should record a retry with the same Idempotency-Key only once")
+    void createTransaction_whenRetriedWithIdempotencyKey_recordsOnce() throws Exception {
+        // given
+        var request = objectMapper.writeValueAsString(new TransactionRequest(new BigDecimal("30"), TransactionType.DEPOSIT));
+        var first = mockMvc.perform(post("/v1/ledger/transactions")
+                        .header(LedgerController.IDEMPOTENCY_KEY_HEADER, "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(request))
+                .andExpect(status().isCreated())
+                .andReturn();
+        var reference = objectMapper.readTree(first.getResponse().getContentAsString()).get("reference").asText();
+
+        // when
+        mockMvc.perform(post("/v1/ledger/transactions")
+                        .header(LedgerController.IDEMPOTENCY_KEY_HEADER, "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(request))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.reference", is(reference)));
+
+        // then
+        mockMvc.perform(get("/v1/ledger/balance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(30)));
+        mockMvc.perform(post("/v1/ledger/transactions")
+                        .header(LedgerController.IDEMPOTENCY_KEY_HEADER, "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new TransactionRequest(new BigDecimal("31"), TransactionType.DEPOSIT))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Idempotency key was already used for a different transaction")));
+    }
+
+    @Test
+    @DisplayName("GET /transactions/{reference} should return the recorded transaction")
+    void getTransaction_whenExists_returnsTransaction() throws Exception {
+        // given
+        var request = new TransactionRequest(new BigDecimal("42"), TransactionType.DEPOSIT);
+        var result = mockMvc.perform(post("/v1/ledger/transactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andReturn();
+        var reference = objectMapper.readTree(result.getResponse().getContentAsString()).get("reference").asText();
+
+        // when / then
+        mockMvc.perform(get("/v1/ledger/transactions/{reference}", reference))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reference", is(reference)))
+                .andExpect(jsonPath("$.amount", is(42)))
+                .andExpect(jsonPath("$.type", is("DEPOSIT")));
+    }
+
+    @Test
+    @DisplayName("GET /transactions/{reference} should fail with 404 for an unknown reference")
+    void getTransaction_whenUnknown_returnsNotFound() throws Exception {
+        mockMvc.perform(get("/v1/ledger/transactions/{reference}", "unknown"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message", is("Transaction not found: unknown")));
+    }
+
+    @Test
+    @DisplayName("GET /history should page through the history using the next cursor")
+    void getHistory_withLimit_returnsPagesAndCursor() throws Exception {
+        // given
+        for (var amount : new String[]{"1", "2", "3"}) {
+            var request = new TransactionRequest(new BigDecimal(amount), TransactionType.DEPOSIT);
+            mockMvc.perform(post("/v1/ledger/transactions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isCreated());
+        }
+
+        // when
+        var firstPage = mockMvc.perform(get("/v1/ledger/history").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].amount", is(1)))
+                .andExpect(jsonPath("$[1].amount", is(2)))
+                .andExpect(header().exists(LedgerController.NEXT_CURSOR_HEADER))
+                .andReturn();
+        var cursor = firstPage.getResponse().getHeader(LedgerController.NEXT_CURSOR_HEADER);
+
+        // then
+        mockMvc.perform(get("/v1/ledger/history").param("limit", "2").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].amount", is(3)))
+                .andExpect(header().doesNotExist(LedgerController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    @DisplayName("GET /history should return only the transactions of the time range")
+    void getHistory_withTimeRange_returnsTransactionsInRange() throws Exception {
+        // given
+        List<String> timestamps = new ArrayList<>();
+        for (var amount : new String[]{"1", "2", "3"}) {
+            var request = new TransactionRequest(new BigDecimal(amount), TransactionType.DEPOSIT);
+            var result = mockMvc.perform(post("/v1/ledger/transactions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isCreated())
+                    .andReturn();
+            timestamps.add(objectMapper.readTree(result.getResponse().getContentAsString()).get("timestamp").asText());
+        }
+
+        // when / then
+        mockMvc.perform(get("/v1/ledger/history")
+                        .param("from", timestamps.get(1))
+                        .param("to", "2999-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].amount", is(2)))
+                .andExpect(jsonPath("$[1].amount", is(3)));
+
+        mockMvc.perform(get("/v1/ledger/history").param("to", timestamps.get(0)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        mockMvc.perform(get("/v1/ledger/history").param("from", timestamps.get(2)).param("to", timestamps.get(0)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Time range start must be before its end")));
+    }
+
+    @Test
+    @DisplayName("GET /stats should return the totals per type of the transactions of the period")
+    void getStats_returnsRollupsPerType() throws Exception {
+        // given
+        for (var request : List.of(new TransactionRequest(new BigDecimal("10"), TransactionType.DEPOSIT),
+                new TransactionRequest(new BigDecimal("30"), TransactionType.DEPOSIT),
+                new TransactionRequest(new BigDecimal("5"), TransactionType.WITHDRAWAL))) {
+            mockMvc.perform(post("/v1/ledger/accounts/acc-1/transactions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isCreated());
+        }
+
+        // when / then
+        mockMvc.perform(get("/v1/ledger/accounts/acc-1/stats").param("period", "DAY"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].type", is("DEPOSIT")))
+                .andExpect(jsonPath("$[0].count", is(2)))
+                .andExpect(jsonPath("$[0].total", is(40)))
+                .andExpect(jsonPath("$[0].min", is(10)))
+                .andExpect(jsonPath("$[0].max", is(30)))
+                .andExpect(jsonPath("$[1].type", is("WITHDRAWAL")))
+                .andExpect(jsonPath("$[1].total", is(5)));
+
+        mockMvc.perform(get("/v1/ledger/accounts/acc-1/stats").param("period", "WEEK"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Invalid value for parameter period")));
+    }
+
+    @Test
+    @DisplayName("GET /balance should return the balance as of the given time")
+    void getBalance_asOf_returnsHistoricalBalance() throws Exception {
+        // given
+        List<String> timestamps = new ArrayList<>();
+        for (var amount : new String[]{"10", "20"}) {
+            var request = new TransactionRequest(new BigDecimal(amount), TransactionType.DEPOSIT);
+            var result = mockMvc.perform(post("/v1/ledger/transactions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isCreated())
+                    .andReturn();
+            timestamps.add(objectMapper.readTree(result.getResponse().getContentAsString()).get("timestamp").asText());
+        }
+
+        // when / then
+        mockMvc.perform(get("/v1/ledger/balance").param("asOf", "2000-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(0)));
+        mockMvc.perform(get("/v1/ledger/balance").param("asOf", timestamps.get(0)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(10)));
+        mockMvc.perform(get("/v1/ledger/balance").param("asOf", timestamps.get(1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(30)));
+        mockMvc.perform(get("/v1/ledger/balance").param("asOf", "yesterday"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /feed should push recorded transactions as Server-Sent Events")
+    void subscribe_pushesTransactionsAsServerSentEvents() throws Exception {
+        // given
+        var deposit = objectMapper.writeValueAsString(new TransactionRequest(new BigDecimal("10"), TransactionType.DEPOSIT));
+        mockMvc.perform(post("/v1/ledger/accounts/acc-1/transactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(deposit))
+                .andExpect(status().isCreated());
+
+        // when
+        var result = mockMvc.perform(get("/v1/ledger/accounts/acc-1/feed").param("from", "0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(post("/v1/ledger/accounts/acc-1/transactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(deposit))
+                .andExpect(status().isCreated());
+
+        // then
+        var response = result.getResponse();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!response.getContentAsString().contains("id:1") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(response.getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+        assertThat(response.getContentAsString())
+                .contains("id:0\nevent:transaction\ndata:{\"sequence\":0,")
+                .contains("\"balance\":10}")
+                .contains("id:1\nevent:transaction\ndata:{\"sequence\":1,")
+                .contains("\"balance\":20}");
+    }
+
+    @Test
+    @DisplayName("GET /history should return CBOR or Smile when asked for in the Accept header")
+    void getHistory_withBinaryAccept_returnsBinaryFormat() throws Exception {
+        // given
+        for (var amount : new String[]{"1.50", "2", "3"}) {
+            var request = new TransactionRequest(new BigDecimal(amount), TransactionType.DEPOSIT);
+            mockMvc.perform(post("/v1/ledger/transactions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isCreated());
+        }
+        var json = mockMvc.perform(get("/v1/ledger/history")).andReturn().getResponse().getContentAsByteArray();
+
+        for (var format : List.of(
+                Map.<MediaType, ObjectMapper>entry(new MediaType("application", "cbor"),
+                        Jackson2ObjectMapperBuilder.cbor().build()),
+                Map.<MediaType, ObjectMapper>entry(new MediaType("application", "x-jackson-smile"),
+                        Jackson2ObjectMapperBuilder.smile().build()))) {
+            // when
+            var response = mockMvc.perform(get("/v1/ledger/history").accept(format.getKey()))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(format.getKey()))
+                    .andReturn()
+                    .getResponse();
+
+            // then
+            var body = response.getContentAsByteArray();
+            List<TransactionResponse> transactions = format.getValue().readValue(body, new TypeReference<>() {
+            });
+            assertThat(transactions).extracting(TransactionResponse::amount)
+                    .usingElementComparator(BigDecimal::compareTo)
+                    .containsExactly(new BigDecimal("1.50"), new BigDecimal("2"), new BigDecimal("3"));
+            assertThat(transactions).extracting(TransactionResponse::timestamp).doesNotContainNull();
+            assertThat(body.length).isLessThan(json.length);
+        }
+    }
+
+    @Test
+    @DisplayName("GET /history should fail with 400 for an invalid limit or cursor")
+    void getHistory_withInvalidParameters_returnsBadRequest() throws Exception {
+        mockMvc.perform(get("/v1/ledger/history").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.validationErrors.limit", hasSize(1)));
+
+        mockMvc.perform(get("/v1/ledger/history").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Invalid history cursor")));
+    }
+
+    @Test
+    @DisplayName("GET /history/export should stream every transaction as NDJSON")
+    void exportHistory_streamsOneTransactionPerLine() throws Exception {
+        // given
+        for (var amount : new String[]{"10", "20"}) {
+            var request = new TransactionRequest(new BigDecimal(amount), TransactionType.DEPOSIT);
+            mockMvc.perform(post("/v1/ledger/transactions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isCreated());
+        }
+
+        // when
+        var asyncResult = mockMvc.perform(get("/v1/ledger/history/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        var result = mockMvc.perform(asyncDispatch(asyncResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        // then
+        var lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).get("amount").decimalValue()).isEqualByComparingTo("10");
+        assertThat(objectMapper.readTree(lines[1]).get("amount").decimalValue()).isEqualByComparingTo("20");
+    }
+
+    @Test
+    @DisplayName("account routes should keep each account apart from the default one")
+    void accountRoutes_keepAccountsApart() throws Exception {
+        // given
+        var request = new TransactionRequest(new BigDecimal("80"), TransactionType.DEPOSIT);
+        mockMvc.perform(post("/v1/ledger/accounts/{accountId}/transactions", "acc-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated());
+
+        // when / then
+        mockMvc.perform(get("/v1/ledger/accounts/{accountId}/balance", "acc-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(80)));
+        mockMvc.perform(get("/v1/ledger/accounts/{accountId}/history", "acc-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+        mockMvc.perform(get("/v1/ledger/balance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(0)));
+        mockMvc.perform(get("/v1/ledger/accounts/{accountId}/balance", "acc-2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(0)));
+    }
+
+    @Test
+    @DisplayName("account routes should fail with 400 for an invalid account id")
+    void accountRoutes_whenInvalidAccountId_returnsBadRequest() throws Exception {
+        mockMvc.perform(get("/v1/ledger/accounts/{accountId}/balance", "not valid!"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.validationErrors.accountId", hasSize(1)));
+    }
+
     @Test
     @DisplayName("POST /transactions should fail with 400 for invalid request body")
     void createTransaction_whenInvalidInput_returnsBadRequest() throws Exception {
@@ -133,6 +471,18 @@ class LedgerControllerTest {
                 .andExpect(jsonPath("$.validationErrors.amount[0]", is("Amount must be positive")));
     }
 
+    @Test
+    @DisplayName("POST /transactions should fail with 400 for an amount with more than two decimals")
+    void createTransaction_whenTooManyDecimals_returnsBadRequest() throws Exception {
+        var request = new TransactionRequest(new BigDecimal("10.001"), TransactionType.DEPOSIT);
+
+        mockMvc.perform(post("/v1/ledger/transactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Amount must not have more than 2 decimal places")));
+    }
+
     @Test
     @DisplayName("POST /transactions should fail with 400 for malformed JSON")
     void createTransaction_whenMalformedJson_returnsBadRequest() throws Exception {
@@ -145,4 +495,85 @@ class LedgerControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error", is("Bad Request")));
     }
+
+    @Test
+    @DisplayName("POST /transactions/batch should create every transaction and return them in order")
+    void createTransactions_whenValidBatch_isSuccessful() throws Exception {
+        var requests = List.of(
+                new TransactionRequest(new BigDecimal("100"), TransactionType.DEPOSIT),
+                new TransactionRequest(new BigDecimal("30.25"), TransactionType.WITHDRAWAL),
+                new TransactionRequest(new BigDecimal("5"), TransactionType.DEPOSIT));
+
+        mockMvc.perform(post("/v1/ledger/transactions/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[1].amount", is(30.25)))
+                .andExpect(jsonPath("$[1].type", is("WITHDRAWAL")))
+                .andExpect(jsonPath("$[2].reference").exists());
+
+        mockMvc.perform(get("/v1/ledger/balance"))
+                .andExpect(jsonPath("$.balance", is(74.75)));
+        mockMvc.perform(get("/v1/ledger/history"))
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+
+    @Test
+    @DisplayName("POST /transactions/batch should reject the whole batch when it overdraws the account")
+    void createTransactions_whenOverdrawn_rejectsTheWholeBatch() throws Exception {
+        var requests = List.of(
+                new TransactionRequest(new BigDecimal("10"), TransactionType.DEPOSIT),
+                new TransactionRequest(new BigDecimal("20"), TransactionType.WITHDRAWAL),
+                new TransactionRequest(new BigDecimal("50"), TransactionType.DEPOSIT));
+
+        mockMvc.perform(post("/v1/ledger/accounts/acc-1/transactions/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Insufficient funds for withdrawal at index 1")));
+
+        mockMvc.perform(get("/v1/ledger/accounts/acc-1/balance"))
+                .andExpect(jsonPath("$.balance", is(0)));
+        mockMvc.perform(get("/v1/ledger/accounts/acc-1/history"))
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    @DisplayName("POST /transactions/batch should report which items are invalid")
+    void createTransactions_whenInvalidItems_returnsBadRequest() throws Exception {
+        var requests = List.of(
+                new TransactionRequest(new BigDecimal("10"), TransactionType.DEPOSIT),
+                new TransactionRequest(new BigDecimal("-1"), TransactionType.DEPOSIT));
+
+        mockMvc.perform(post("/v1/ledger/transactions/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.validationErrors['[1].amount'][0]", is("Amount must be positive")));
+
+        mockMvc.perform(post("/v1/ledger/transactions/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.validationErrors.requests[0]", is("Batch must contain between 1 and 1000 transactions")));
+    }
+
+    @Test
+    @DisplayName("GET /actuator/prometheus should expose the ledger metrics")
+    void prometheus_afterTransaction_exposesLedgerMetrics() throws Exception {
+        // given
+        mockMvc.perform(post("/v1/ledger/transactions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new TransactionRequest(new BigDecimal("10"), TransactionType.DEPOSIT))));
+
+        // when / then
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("ledger_transactions_record_seconds_count{outcome=\"recorded\",type=\"DEPOSIT\"} 1\n")))
+                .andExpect(content().string(containsString("ledger_history_transactions 1.0")))
+                .andExpect(content().string(containsString("ledger_history_memory_estimate_bytes 228.0")))
+                .andExpect(content().string(containsString("ledger_account_lock_wait_seconds_count 2\n")))
+                .andExpect(content().string(containsString("ledger_withdrawals_rejected_total 0.0")));
+    }
 }
@@ -0,0 +1,119 @@
+package com.wn.tiny.ledger.infrastructure.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.config.ReplicationConfig;
+import com.wn.tiny.ledger.infrastructure.controller.dto.TransactionRequest;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionJournal;
+import com.wn.tiny.ledger.infrastructure.repository.replication.ReplicationLeader;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {"ledger.replication.role=FOLLOWER", "ledger.replication.read-timeout=2s"})
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@DisplayName("Replication follower Integration Tests")
+@ActiveProfiles("local")
+class ReplicationControllerTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static ReplicationLeader leader;
+    private static AccountRepository leaderRepository;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeAll
+    static void startLeader() throws IOException {
+        leader = new ReplicationLeader(TransactionJournal.NONE, 0, 1000);
+        leaderRepository = new AccountRepository(leader);
+        leader.start(leaderRepository, 0);
+    }
+
+    @AfterAll
+    static void stopLeader() throws IOException {
+        leader.close();
+    }
+
+    @DynamicPropertySource
+    static void leaderAddress(DynamicPropertyRegistry registry) {
+        registry.add("ledger.replication.leader", () -> "localhost:" + leader.getPort());
+    }
+
+    @Test
+    @DisplayName("GET /history on a follower should return a write made on the leader when given its sequence")
+    void getHistory_withSequenceOfLeaderWrite_readsTheWrite() throws Exception {
+        // given
+        leaderRepository.addTransaction("acc-ryw",
+                new Transaction(idGenerator, Money.of(new BigDecimal("42")), TransactionType.DEPOSIT), balance -> true);
+        final long sequence = leader.lastSequence();
+
+        // when / then
+        mockMvc.perform(get("/v1/ledger/accounts/acc-ryw/history")
+                        .header(ReplicationConfig.SEQUENCE_HEADER, sequence))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(ReplicationConfig.SEQUENCE_HEADER, sequence))
+                .andExpect(header().string(ReplicationConfig.REPLICATION_LAG_HEADER, "0"))
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        mockMvc.perform(get("/v1/ledger/accounts/acc-ryw/balance")
+                        .header(ReplicationConfig.SEQUENCE_HEADER, sequence))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance", is(42)));
+    }
+
+    @Test
+    @DisplayName("POST /transactions on a follower should be rejected as misdirected")
+    void createTransaction_onFollower_returnsMisdirectedRequest() throws Exception {
+        var request = new TransactionRequest(new BigDecimal("10"), TransactionType.DEPOSIT);
+
+        mockMvc.perform(post("/v1/ledger/transactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().is(421));
+    }
+
+    @Test
+    @DisplayName("GET /balance on a follower should return 503 when the leader never reaches the given sequence")
+    void getBalance_withSequenceAheadOfLeader_returnsServiceUnavailable() throws Exception {
+        mockMvc.perform(get("/v1/ledger/balance")
+                        .header(ReplicationConfig.SEQUENCE_HEADER, Long.MAX_VALUE))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+        mockMvc.perform(get("/v1/ledger/balance")
+                        .header(ReplicationConfig.SEQUENCE_HEADER, "not-a-sequence"))
+                .andExpect(status().isBadRequest());
+    }
+}
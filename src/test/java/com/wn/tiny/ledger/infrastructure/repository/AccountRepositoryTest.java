@@ -1,6 +1,8 @@
 package com.wn.tiny.ledger.infrastructure.repository;
 
 import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
 import com.wn.tiny.ledger.domain.Transaction;
 import com.wn.tiny.ledger.domain.TransactionType;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,7 +12,10 @@ import org.junit.jupiter.api.Test;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
-import java.util.function.Predicate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -18,7 +23,11 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 @DisplayName("AccountRepository Tests")
 class AccountRepositoryTest {
 
-    private final Predicate<BigDecimal> alwaysTrue = (balance) -> true;
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final String ACCOUNT = "account-1";
+
+    private final LongPredicate alwaysTrue = (balance) -> true;
     private AccountRepository accountRepository;
 
     @BeforeEach
@@ -29,36 +38,36 @@ class AccountRepositoryTest {
     @Test
     @DisplayName("should have a balance of zero")
     void initialBalanceIsZero() {
-        assertThat(accountRepository.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(accountRepository.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo(BigDecimal.ZERO);
     }
 
     @Test
     @DisplayName("should have an empty transaction history")
     void initialHistoryIsEmpty() {
-        assertThat(accountRepository.getTransactionHistory()).isEmpty();
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT)).isEmpty();
     }
 
     @Test
     @DisplayName("should not find any transaction")
     void findTransaction_whenEmpty_returnsEmpty() {
-        assertThat(accountRepository.findTransaction("any-id")).isEmpty();
+        assertThat(accountRepository.findTransaction(ACCOUNT, "any-id")).isEmpty();
     }
 
     @Test
     @DisplayName("should correctly add a deposit")
     void addTransaction_forDeposit_updatesState() {
         // given
-        Transaction deposit = new Transaction(new BigDecimal("250.75"), TransactionType.DEPOSIT);
+        Transaction deposit = new Transaction(idGenerator, Money.of(new BigDecimal("250.75")), TransactionType.DEPOSIT);
 
         // when
-        accountRepository.addTransaction(deposit, alwaysTrue);
+        accountRepository.addTransaction(ACCOUNT, deposit, alwaysTrue);
 
         // then
-        assertThat(accountRepository.getBalance()).isEqualByComparingTo("250.75");
-        List<Transaction> history = accountRepository.getTransactionHistory();
+        assertThat(accountRepository.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("250.75");
+        List<Transaction> history = accountRepository.getTransactionHistory(ACCOUNT);
         assertThat(history).hasSize(1).containsExactly(deposit);
 
-        Optional<Transaction> found = accountRepository.findTransaction(deposit.getId());
+        Optional<Transaction> found = accountRepository.findTransaction(ACCOUNT, deposit.getId());
         assertThat(found).isPresent().contains(deposit);
     }
 
@@ -66,44 +75,172 @@ class AccountRepositoryTest {
     @DisplayName("should correctly add a successful withdrawal")
     void addTransaction_forSuccessfulWithdrawal_updatesState() {
         // Given a pre-existing balance
-        Transaction deposit = new Transaction(new BigDecimal("100"), TransactionType.DEPOSIT);
-        accountRepository.addTransaction(deposit, alwaysTrue);
+        Transaction deposit = new Transaction(idGenerator, Money.of(new BigDecimal("100")), TransactionType.DEPOSIT);
+        accountRepository.addTransaction(ACCOUNT, deposit, alwaysTrue);
 
         // When
-        Transaction withdrawal = new Transaction(new BigDecimal("40"), TransactionType.WITHDRAWAL);
-        Predicate<BigDecimal> sufficientFunds = (balance) -> balance.compareTo(withdrawal.getAmount()) >= 0;
-        accountRepository.addTransaction(withdrawal, sufficientFunds);
+        Transaction withdrawal = new Transaction(idGenerator, Money.of(new BigDecimal("40")), TransactionType.WITHDRAWAL);
+        LongPredicate sufficientFunds = (balance) -> balance >= withdrawal.getAmount().minorUnits();
+        accountRepository.addTransaction(ACCOUNT, withdrawal, sufficientFunds);
 
         // Then
-        assertThat(accountRepository.getBalance()).isEqualByComparingTo("60");
-        assertThat(accountRepository.getTransactionHistory()).hasSize(2).contains(deposit, withdrawal);
+        assertThat(accountRepository.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("60");
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT)).hasSize(2).contains(deposit, withdrawal);
     }
 
     @Test
     @DisplayName("should throw exception and not update state for a failed withdrawal")
     void addTransaction_forFailedWithdrawal_throwsAndRollsBack() {
         // Given a pre-existing balance
-        Transaction deposit = new Transaction(new BigDecimal("50"), TransactionType.DEPOSIT);
-        accountRepository.addTransaction(deposit, alwaysTrue);
+        Transaction deposit = new Transaction(idGenerator, Money.of(new BigDecimal("50")), TransactionType.DEPOSIT);
+        accountRepository.addTransaction(ACCOUNT, deposit, alwaysTrue);
 
         // when
-        Transaction withdrawal = new Transaction(new BigDecimal("100"), TransactionType.WITHDRAWAL);
-        Predicate<BigDecimal> insufficientFunds = (balance) -> balance.compareTo(withdrawal.getAmount()) >= 0;
+        Transaction withdrawal = new Transaction(idGenerator, Money.of(new BigDecimal("100")), TransactionType.WITHDRAWAL);
+        LongPredicate insufficientFunds = (balance) -> balance >= withdrawal.getAmount().minorUnits();
 
         // then
-        assertThatThrownBy(() -> accountRepository.addTransaction(withdrawal, insufficientFunds))
+        assertThatThrownBy(() -> accountRepository.addTransaction(ACCOUNT, withdrawal, insufficientFunds))
                 .isInstanceOf(InvalidTransactionException.class)
                 .hasMessage("Insufficient funds for withdrawal");
 
-        assertThat(accountRepository.getBalance()).isEqualByComparingTo("50");
-        assertThat(accountRepository.getTransactionHistory()).hasSize(1).containsExactly(deposit);
+        assertThat(accountRepository.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("50");
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT)).hasSize(1).containsExactly(deposit);
     }
 
     @Test
     @DisplayName("getTransactionHistory should return an immutable list")
     void getTransactionHistory_returnsImmutableList() {
-        accountRepository.addTransaction(new Transaction(BigDecimal.TEN, TransactionType.DEPOSIT), (b) -> true);
-        List<Transaction> history = accountRepository.getTransactionHistory();
+        accountRepository.addTransaction(ACCOUNT, new Transaction(idGenerator, Money.of(BigDecimal.TEN), TransactionType.DEPOSIT), (b) -> true);
+        List<Transaction> history = accountRepository.getTransactionHistory(ACCOUNT);
         assertThatThrownBy(() -> history.add(null)).isInstanceOf(UnsupportedOperationException.class);
     }
+
+    @Test
+    @DisplayName("should return a bounded slice of the history starting at a sequence")
+    void getTransactionHistory_fromSequence_returnsSlice() {
+        // given
+        var first = new Transaction(idGenerator, Money.of(new BigDecimal("1")), TransactionType.DEPOSIT);
+        var second = new Transaction(idGenerator, Money.of(new BigDecimal("2")), TransactionType.DEPOSIT);
+        var third = new Transaction(idGenerator, Money.of(new BigDecimal("3")), TransactionType.DEPOSIT);
+        accountRepository.addTransaction(ACCOUNT, first, alwaysTrue);
+        accountRepository.addTransaction(ACCOUNT, second, alwaysTrue);
+        accountRepository.addTransaction(ACCOUNT, third, alwaysTrue);
+
+        // when / then
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT, 1, 1)).containsExactly(second);
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT, 1, 10)).containsExactly(second, third);
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT, 3, 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should keep the state of each account independent")
+    void addTransaction_onDifferentAccounts_keepsStateApart() {
+        // given
+        Transaction deposit = new Transaction(idGenerator, Money.of(new BigDecimal("10")), TransactionType.DEPOSIT);
+        Transaction otherDeposit = new Transaction(idGenerator, Money.of(new BigDecimal("25")), TransactionType.DEPOSIT);
+
+        // when
+        accountRepository.addTransaction(ACCOUNT, deposit, alwaysTrue);
+        accountRepository.addTransaction("account-2", otherDeposit, alwaysTrue);
+
+        // then
+        assertThat(accountRepository.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("10");
+        assertThat(accountRepository.getBalance("account-2").toBigDecimal()).isEqualByComparingTo("25");
+        assertThat(accountRepository.getTransactionHistory("account-2")).containsExactly(otherDeposit);
+        assertThat(accountRepository.findTransaction("account-2", deposit.getId())).isEmpty();
+        assertThat(accountRepository.getBalance("unknown").toBigDecimal()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(accountRepository.getTransactionHistory("unknown", 0, 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should not publish a deposit, nor a withdrawal made on it, when the journal fails to make it durable")
+    void addTransaction_whenJournalFailsWithConcurrentWithdrawal_neverOverdraws() throws Exception {
+        // given, a journal that holds every write until it fails
+        CountDownLatch failure = new CountDownLatch(1);
+        AtomicLong tickets = new AtomicLong();
+        accountRepository = new AccountRepository(new TransactionJournal() {
+            @Override
+            public long append(String accountId, List<Transaction> transactions) {
+                return tickets.incrementAndGet();
+            }
+
+            @Override
+            public void awaitDurable(long ticket) {
+                try {
+                    failure.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new LedgerStorageException("Disk failed", null);
+            }
+        });
+        Transaction deposit = new Transaction(idGenerator, Money.of(new BigDecimal("100")), TransactionType.DEPOSIT);
+        Transaction withdrawal = new Transaction(idGenerator, Money.of(new BigDecimal("100")), TransactionType.WITHDRAWAL);
+        LongPredicate sufficientFunds = balance -> balance + withdrawal.getBalanceDelta() >= 0;
+
+        // when
+        var depositing = CompletableFuture.runAsync(() -> accountRepository.addTransaction(ACCOUNT, deposit, alwaysTrue));
+        while (accountRepository.getJournalTicket(ACCOUNT) != 1) {
+            Thread.onSpinWait();
+        }
+        var withdrawing = CompletableFuture.runAsync(
+                () -> accountRepository.addTransaction(ACCOUNT, withdrawal, sufficientFunds));
+        while (accountRepository.getJournalTicket(ACCOUNT) != 2) {
+            Thread.onSpinWait();
+        }
+        final var balanceBeforeDurable = accountRepository.getBalance(ACCOUNT);
+        failure.countDown();
+
+        // then
+        assertThat(balanceBeforeDurable.toBigDecimal()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThatThrownBy(depositing::join).hasCauseInstanceOf(LedgerStorageException.class);
+        assertThatThrownBy(withdrawing::join).hasCauseInstanceOf(LedgerStorageException.class);
+        assertThat(accountRepository.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT)).isEmpty();
+        assertThat(accountRepository.findTransaction(ACCOUNT, deposit.getId())).isEmpty();
+        assertThat(accountRepository.snapshot()).singleElement()
+                .satisfies(snapshot -> assertThat(snapshot.transactions()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("should replace every account with the ones of a snapshot, keeping the replaced ones readable")
+    void replaceAll_withSnapshot_swapsInTheNewAccounts() {
+        // given
+        Transaction deposit = new Transaction(idGenerator, Money.of(new BigDecimal("10")), TransactionType.DEPOSIT);
+        Transaction otherDeposit = new Transaction(idGenerator, Money.of(new BigDecimal("25")), TransactionType.DEPOSIT);
+        accountRepository.addTransaction(ACCOUNT, deposit, alwaysTrue);
+        var previousHistory = accountRepository.getTransactionHistory(ACCOUNT);
+
+        // when
+        accountRepository.replaceAll(List.of(new AccountSnapshot("account-2", otherDeposit.getBalanceDelta(), 7,
+                List.of(otherDeposit))));
+
+        // then
+        assertThat(accountRepository.getAccountCount()).isEqualTo(1);
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT)).isEmpty();
+        assertThat(accountRepository.getBalance("account-2").toBigDecimal()).isEqualByComparingTo("25");
+        assertThat(accountRepository.getJournalTicket("account-2")).isEqualTo(7);
+        assertThat(previousHistory).containsExactly(deposit);
+    }
+
+    @Test
+    @DisplayName("should record and read back transactions with the columnar storage engine")
+    void addTransaction_withColumnarEngine_readsBackTransactions() {
+        // given
+        accountRepository = new AccountRepository(TransactionJournal.NONE, StorageEngine.COLUMNAR);
+        Transaction deposit = new Transaction(idGenerator, Money.of(new BigDecimal("250.75")), TransactionType.DEPOSIT);
+        Transaction withdrawal = new Transaction(idGenerator, Money.of(new BigDecimal("50.25")), TransactionType.WITHDRAWAL);
+
+        // when
+        accountRepository.addTransactions(ACCOUNT, List.of(deposit, withdrawal), alwaysTrue);
+
+        // then
+        assertThat(accountRepository.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("200.50");
+        assertThat(accountRepository.getTransactionHistory(ACCOUNT)).usingRecursiveFieldByFieldElementComparator()
+                .containsExactly(deposit, withdrawal);
+        assertThat(accountRepository.findTransaction(ACCOUNT, withdrawal.getId())).get()
+                .usingRecursiveComparison().isEqualTo(withdrawal);
+        assertThat(accountRepository.getStorageEngine().estimatedBytesPerTransaction()).isEqualTo(25);
+    }
 }
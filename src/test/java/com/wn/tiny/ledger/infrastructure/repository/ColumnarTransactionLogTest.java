@@ -0,0 +1,92 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ColumnarTransactionLog Tests")
+class ColumnarTransactionLogTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(3);
+
+    @Test
+    @DisplayName("should read back every field of the appended transactions across chunk boundaries")
+    void append_acrossChunks_readsBackEveryField() {
+        // given
+        var log = new ColumnarTransactionLog(4);
+        List<Transaction> appended = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            appended.add(new Transaction(idGenerator, Money.of(new BigDecimal(i + ".25")),
+                    i % 3 == 0 ? TransactionType.WITHDRAWAL : TransactionType.DEPOSIT));
+        }
+
+        // when
+        log.appendAll(appended.subList(0, 5));
+        appended.subList(5, 11).forEach(log::append);
+
+        // then
+        assertThat(log.snapshot()).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(appended);
+        assertThat(log.balanceBefore(11)).isEqualTo(appended.stream().mapToLong(Transaction::getBalanceDelta).sum());
+    }
+
+    @Test
+    @DisplayName("should find transactions by id even when ids were appended out of order")
+    void findById_withOutOfOrderIds_findsEveryTransaction() {
+        // given, ids taken in order but appended with a few late ones, as concurrent writers would produce
+        var log = new ColumnarTransactionLog(4);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(idGenerator.nextId());
+        }
+        int[] order = {0, 1, 3, 2, 4, 5, 9, 6, 7, 8, 10, 12, 11, 13, 14, 15, 17, 16, 18, 19,
+                20, 21, 22, 23, 26, 24, 25, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 39, 37, 38};
+        for (int position : order) {
+            log.append(new Transaction(ids.get(position), Money.of(BigDecimal.ONE), TransactionType.DEPOSIT,
+                    LocalDateTime.now()));
+        }
+
+        // when / then
+        for (String id : ids) {
+            assertThat(log.findById(id)).extracting(Transaction::getId).isEqualTo(id);
+        }
+        assertThat(log.findById(idGenerator.nextId())).isNull();
+        assertThat(log.findById("not-an-id")).isNull();
+        assertThat(new ColumnarTransactionLog().findById(ids.get(0))).isNull();
+    }
+
+    @Test
+    @DisplayName("should keep the transactions the columns cannot hold as they were appended")
+    void append_withLegacyIdOrTimestampOutOfRange_keepsTransactionAside() {
+        // given
+        var log = new ColumnarTransactionLog(4);
+        var legacy = new Transaction(UUID.randomUUID().toString(), Money.of(BigDecimal.TEN), TransactionType.DEPOSIT,
+                LocalDateTime.of(2026, 1, 1, 0, 0));
+        var farFuture = new Transaction(idGenerator.nextId(), Money.of(BigDecimal.ONE), TransactionType.WITHDRAWAL,
+                LocalDateTime.of(3000, 1, 1, 0, 0));
+        var regular = new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT);
+
+        // when
+        log.appendAll(List.of(legacy, farFuture, regular));
+
+        // then
+        assertThat(log.get(0)).isSameAs(legacy);
+        assertThat(log.get(1)).isSameAs(farFuture);
+        assertThat(log.findById(legacy.getId())).isSameAs(legacy);
+        assertThat(log.findById(farFuture.getId())).isSameAs(farFuture);
+        assertThat(log.findById(regular.getId())).usingRecursiveComparison().isEqualTo(regular);
+        assertThat(log.balanceBefore(3)).isEqualTo(1000);
+        assertThat(log.findByTime(null, LocalDateTime.of(2100, 1, 1, 0, 0), 0, 10).transactions())
+                .extracting(Transaction::getId).containsExactly(legacy.getId(), regular.getId());
+    }
+}
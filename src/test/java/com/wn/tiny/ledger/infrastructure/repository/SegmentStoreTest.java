@@ -0,0 +1,151 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("SegmentStore Tests")
+class SegmentStoreTest {
+
+    private static final long CHUNK_BYTES = ColumnarTransactionLog.Chunk.bytes(4);
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+    private final LocalDateTime base = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should read the history back the same once its complete chunks are sealed and evicted")
+    void sealOldest_evictsCompleteChunks_readsHistoryBack() throws IOException {
+        // given, ten entries in chunks of four with a late one and a legacy id
+        var store = new SegmentStore(directory, 0, CHUNK_BYTES);
+        var log = store.newLog("account-1", 4);
+        List<Transaction> appended = new ArrayList<>();
+        int[] seconds = {0, 1, 3, 2, 4, 5, 6, 7, 8, 9};
+        for (int second : seconds) {
+            appended.add(new Transaction(idGenerator.nextId(), Money.of(new BigDecimal(second + ".10")),
+                    second % 2 == 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL, base.plusSeconds(second)));
+        }
+        appended.set(5, new Transaction(UUID.randomUUID().toString(), Money.of(BigDecimal.TEN), TransactionType.DEPOSIT,
+                base.plusSeconds(5)));
+        log.appendAll(appended);
+
+        // when
+        while (store.sealOldest()) {
+            // seals every complete chunk, the budget is zero
+        }
+
+        // then
+        assertThat(log.sealedChunks()).isEqualTo(2);
+        assertThat(store.getHotBytes()).isEqualTo(CHUNK_BYTES);
+        assertThat(store.getSegmentBytes()).isPositive();
+        assertThat(log.snapshot()).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(appended);
+        assertThat(log.findById(appended.get(2).getId())).usingRecursiveComparison().isEqualTo(appended.get(2));
+        assertThat(log.findById(appended.get(5).getId())).isSameAs(appended.get(5));
+        assertThat(log.findByTime(base.plusSeconds(2), base.plusSeconds(4), 0, 10).transactions())
+                .extracting(Transaction::getId).containsExactly(appended.get(2).getId(), appended.get(3).getId());
+        assertThat(log.balanceAsOf(base.plusSeconds(9)))
+                .isEqualTo(appended.stream().mapToLong(Transaction::getBalanceDelta).sum());
+
+        store.close();
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    @DisplayName("should seal the oldest chunks over all logs only while over the hot budget")
+    void sealOldest_overBudget_sealsOldestChunksFirst() throws IOException {
+        // given, three chunks on each log, the ones of the second log are older
+        var store = new SegmentStore(directory, 4 * CHUNK_BYTES, CHUNK_BYTES);
+        var recent = store.newLog("account-1", 4);
+        var old = store.newLog("account-2", 4);
+        for (int i = 0; i < 12; i++) {
+            recent.append(transactionAt(base.plusHours(1).plusSeconds(i)));
+            old.append(transactionAt(base.plusSeconds(i)));
+        }
+
+        // when
+        boolean sealed = false;
+        while (store.getHotBytes() > 4 * CHUNK_BYTES) {
+            sealed = store.sealOldest();
+        }
+
+        // then
+        assertThat(sealed).isTrue();
+        assertThat(old.sealedChunks()).isEqualTo(2);
+        assertThat(recent.sealedChunks()).isZero();
+        assertThat(store.getHotBytes()).isEqualTo(4 * CHUNK_BYTES);
+    }
+
+    @Test
+    @DisplayName("should keep the sealed chunks read last in the cache, up to its size")
+    void read_sealedChunks_cachesLeastRecentlyUsed() throws IOException {
+        // given, a cache that holds a single chunk
+        var store = new SegmentStore(directory, 0, CHUNK_BYTES);
+        var log = store.newLog("account-1", 4);
+        for (int i = 0; i < 9; i++) {
+            log.append(transactionAt(base.plusSeconds(i)));
+        }
+        store.sealOldest();
+
+        // when
+        log.get(0);
+        log.get(1);
+        log.get(4);
+        log.get(0);
+
+        // then
+        assertThat(store.getCacheHits()).isEqualTo(1);
+        assertThat(store.getCacheMisses()).isEqualTo(3);
+        store.close();
+    }
+
+    @Test
+    @DisplayName("should forget a released log, its heap, its segment files and its cached chunks")
+    void release_replacedLog_dropsItsBytesAndSegments() throws IOException {
+        // given, a sealed log and a log of the same account replacing it
+        var store = new SegmentStore(directory, 0, CHUNK_BYTES);
+        var replaced = store.newLog("account-1", 4);
+        for (int i = 0; i < 9; i++) {
+            replaced.append(transactionAt(base.plusSeconds(i)));
+        }
+        store.sealOldest();
+        replaced.get(0);
+        var replacement = store.newLog("account-1", 4);
+        replacement.append(transactionAt(base));
+
+        // when
+        store.release("account-1", replaced);
+
+        // then
+        assertThat(store.getHotBytes()).isEqualTo(CHUNK_BYTES);
+        assertThat(store.getSegmentBytes()).isZero();
+        assertThat(store.sealOldest()).isFalse();
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+        assertThat(replaced.snapshot()).hasSize(9);
+        store.close();
+    }
+
+    private Transaction transactionAt(LocalDateTime timestamp) {
+        return new Transaction(idGenerator.nextId(), Money.of(BigDecimal.ONE), TransactionType.DEPOSIT, timestamp);
+    }
+}
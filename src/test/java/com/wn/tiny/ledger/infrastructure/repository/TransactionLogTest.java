@@ -0,0 +1,213 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.HistorySlice;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("TransactionLog Tests")
+class TransactionLogTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @Test
+    @DisplayName("should keep append order across chunk boundaries")
+    void append_acrossChunks_keepsOrder() {
+        // given
+        var log = new ObjectTransactionLog(4);
+        List<Transaction> appended = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 37; i++) {
+            var transaction = new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT);
+            assertThat(log.append(transaction)).isEqualTo(i);
+            appended.add(transaction);
+        }
+
+        // then
+        assertThat(log.size()).isEqualTo(37);
+        assertThat(log.snapshot()).containsExactlyElementsOf(appended);
+        assertThat(log.get(36)).isSameAs(appended.get(36));
+    }
+
+    @Test
+    @DisplayName("snapshot should not see transactions appended after it was taken")
+    void snapshot_isBoundedByHighWaterMark() {
+        // given
+        var log = new ObjectTransactionLog(2);
+        log.append(new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT));
+        var snapshot = log.snapshot();
+
+        // when
+        log.append(new Transaction(idGenerator, Money.of(BigDecimal.TEN), TransactionType.DEPOSIT));
+
+        // then
+        assertThat(snapshot).hasSize(1);
+        assertThatThrownBy(() -> snapshot.get(1)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(log.snapshot()).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("should append many transactions at once across chunk boundaries")
+    void appendAll_acrossChunks_keepsOrder() {
+        // given
+        var log = new ObjectTransactionLog(4);
+        log.append(new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT));
+        List<Transaction> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(new Transaction(idGenerator, Money.of(BigDecimal.TEN), TransactionType.DEPOSIT));
+        }
+
+        // when
+        int first = log.appendAll(batch);
+
+        // then
+        assertThat(first).isEqualTo(1);
+        assertThat(log.size()).isEqualTo(11);
+        assertThat(log.snapshot(1, 10)).containsExactlyElementsOf(batch);
+    }
+
+    @Test
+    @DisplayName("should reject a chunk size that is not a power of two")
+    void constructor_withInvalidChunkSize_shouldThrow() {
+        assertThatThrownBy(() -> new ObjectTransactionLog(3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("should not lose transactions under concurrent appends")
+    void append_concurrently_keepsEveryTransaction() throws InterruptedException {
+        // given
+        var log = new ObjectTransactionLog(16);
+        int threads = 8;
+        int perThread = 5_000;
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    log.append(new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT));
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        // then
+        var snapshot = log.snapshot();
+        assertThat(snapshot).hasSize(threads * perThread).doesNotContainNull();
+        assertThat(new HashSet<>(snapshot)).hasSize(threads * perThread);
+    }
+
+    @Test
+    @DisplayName("should find the transactions of a time range even when timestamps are out of order")
+    void findByTime_withOutOfOrderTimestamps_returnsRangeInLogOrder() {
+        // given, minute offsets with a few late appends, as concurrent writers would produce
+        var log = new ObjectTransactionLog(4);
+        var base = LocalDateTime.of(2026, 1, 1, 0, 0);
+        int[] minutes = {0, 1, 2, 4, 3, 5, 6, 8, 9, 7, 10, 11, 12, 13, 15, 14, 16, 17, 18, 19};
+        for (int minute : minutes) {
+            log.append(transactionAt(base.plusMinutes(minute)));
+        }
+
+        // when
+        var slice = log.findByTime(base.plusMinutes(7), base.plusMinutes(14), 0, 100);
+
+        // then
+        assertThat(slice.transactions()).extracting(Transaction::getTimestamp).containsExactly(
+                base.plusMinutes(8), base.plusMinutes(9), base.plusMinutes(7), base.plusMinutes(10),
+                base.plusMinutes(11), base.plusMinutes(12), base.plusMinutes(13));
+        assertThat(slice.hasMore()).isFalse();
+    }
+
+    @Test
+    @DisplayName("should return the sequence of the next transaction in range when the limit is reached")
+    void findByTime_withLimit_returnsNextSequence() {
+        // given
+        var log = new ObjectTransactionLog(4);
+        var base = LocalDateTime.of(2026, 1, 1, 0, 0);
+        for (int minute = 0; minute < 20; minute++) {
+            log.append(transactionAt(base.plusMinutes(minute)));
+        }
+
+        // when
+        var first = log.findByTime(base.plusMinutes(5), null, 0, 3);
+        var second = log.findByTime(base.plusMinutes(5), null, (int) first.nextSequence(), 100);
+
+        // then
+        assertThat(first.transactions()).extracting(Transaction::getTimestamp)
+                .containsExactly(base.plusMinutes(5), base.plusMinutes(6), base.plusMinutes(7));
+        assertThat(first.nextSequence()).isEqualTo(8);
+        assertThat(second.transactions()).hasSize(12);
+        assertThat(second.hasMore()).isFalse();
+    }
+
+    @Test
+    @DisplayName("should return nothing for a time range outside of the log")
+    void findByTime_outsideOfLog_returnsEmpty() {
+        // given
+        var log = new ObjectTransactionLog(4);
+        var base = LocalDateTime.of(2026, 1, 1, 0, 0);
+        for (int minute = 0; minute < 10; minute++) {
+            log.append(transactionAt(base.plusMinutes(minute)));
+        }
+
+        // when / then
+        assertThat(log.findByTime(base.plusDays(1), null, 0, 10).transactions()).isEmpty();
+        assertThat(log.findByTime(null, base, 0, 10).transactions()).isEmpty();
+        assertThat(log.findByTime(base.plusYears(500), LocalDateTime.MAX, 0, 10).transactions()).isEmpty();
+        assertThat(log.findByTime(LocalDateTime.MIN, LocalDateTime.MAX, 0, 100).transactions()).hasSize(10);
+        assertThat(new ObjectTransactionLog().findByTime(null, null, 0, 10))
+                .isEqualTo(new HistorySlice(List.of(), HistorySlice.NO_MORE));
+    }
+
+    @Test
+    @DisplayName("should sum the balance deltas up to a point in time from the chunk checkpoints")
+    void balanceAsOf_withOutOfOrderTimestamps_countsEntriesAtOrBefore() {
+        // given, deposits of one unit at minute offsets with a few late appends, then a withdrawal of all of them
+        var log = new ObjectTransactionLog(4);
+        var base = LocalDateTime.of(2026, 1, 1, 0, 0);
+        int[] minutes = {0, 1, 2, 4, 3, 5, 6, 8, 9, 7, 10, 11, 12, 13, 15, 14, 16, 17, 18, 19};
+        for (int minute : minutes) {
+            log.append(transactionAt(base.plusMinutes(minute)));
+        }
+        log.append(new Transaction(UUID.randomUUID().toString(), Money.of(new BigDecimal("20.00")),
+                TransactionType.WITHDRAWAL, base.plusMinutes(30)));
+
+        // when / then
+        assertThat(log.balanceAsOf(base.minusSeconds(1))).isZero();
+        assertThat(log.balanceAsOf(base)).isEqualTo(100);
+        for (int minute = 0; minute < 20; minute++) {
+            assertThat(log.balanceAsOf(base.plusMinutes(minute).plusSeconds(30))).isEqualTo((minute + 1) * 100L);
+        }
+        assertThat(log.balanceAsOf(base.plusMinutes(29))).isEqualTo(2000);
+        assertThat(log.balanceAsOf(base.plusMinutes(30))).isZero();
+        assertThat(new ObjectTransactionLog().balanceAsOf(base)).isZero();
+    }
+
+    private static Transaction transactionAt(LocalDateTime timestamp) {
+        return new Transaction(UUID.randomUUID().toString(), Money.of(BigDecimal.ONE), TransactionType.DEPOSIT,
+                timestamp);
+    }
+}
@@ -0,0 +1,93 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.RollupPeriod;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionRollup;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("TransactionRollups Tests")
+class TransactionRollupsTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 1, 1, 10, 0);
+
+    @Test
+    @DisplayName("should roll transactions up per type into minute, hour and day buckets")
+    void add_rollsUpPerTypeAndPeriod() {
+        // given
+        var rollups = new TransactionRollups();
+
+        // when
+        rollups.add(transaction("10.00", TransactionType.DEPOSIT, BASE.plusSeconds(5)));
+        rollups.add(transaction("30.00", TransactionType.DEPOSIT, BASE.plusSeconds(50)));
+        rollups.add(transaction("5.00", TransactionType.WITHDRAWAL, BASE.plusSeconds(20)));
+        rollups.add(transaction("1.00", TransactionType.DEPOSIT, BASE.plusMinutes(90)));
+
+        // then
+        assertThat(rollups.find(RollupPeriod.MINUTE, null, null)).containsExactly(
+                rollup(BASE, TransactionType.DEPOSIT, 2, "40.00", "10.00", "30.00"),
+                rollup(BASE, TransactionType.WITHDRAWAL, 1, "5.00", "5.00", "5.00"),
+                rollup(BASE.plusMinutes(90), TransactionType.DEPOSIT, 1, "1.00", "1.00", "1.00"));
+        assertThat(rollups.find(RollupPeriod.HOUR, null, null)).containsExactly(
+                rollup(BASE, TransactionType.DEPOSIT, 2, "40.00", "10.00", "30.00"),
+                rollup(BASE, TransactionType.WITHDRAWAL, 1, "5.00", "5.00", "5.00"),
+                rollup(BASE.plusHours(1), TransactionType.DEPOSIT, 1, "1.00", "1.00", "1.00"));
+        assertThat(rollups.find(RollupPeriod.DAY, null, null)).containsExactly(
+                rollup(BASE.toLocalDate().atStartOfDay(), TransactionType.DEPOSIT, 3, "41.00", "1.00", "30.00"),
+                rollup(BASE.toLocalDate().atStartOfDay(), TransactionType.WITHDRAWAL, 1, "5.00", "5.00", "5.00"));
+    }
+
+    @Test
+    @DisplayName("should return the buckets that overlap the time range")
+    void find_withTimeRange_returnsOverlappingBuckets() {
+        // given
+        var rollups = new TransactionRollups();
+        for (int hour = 0; hour < 5; hour++) {
+            rollups.add(transaction("1.00", TransactionType.DEPOSIT, BASE.plusHours(hour)));
+        }
+
+        // when
+        var found = rollups.find(RollupPeriod.HOUR, BASE.plusMinutes(90), BASE.plusHours(3));
+
+        // then
+        assertThat(found).extracting(TransactionRollup::start).containsExactly(BASE.plusHours(1), BASE.plusHours(2));
+    }
+
+    @Test
+    @DisplayName("should only keep the most recent buckets of a period")
+    void add_beyondRetention_dropsOldestBuckets() {
+        // given
+        var rollups = new TransactionRollups();
+        int retention = TransactionRollups.retention(RollupPeriod.MINUTE);
+
+        // when
+        for (int minute = 0; minute < retention + 10; minute++) {
+            rollups.add(transaction("1.00", TransactionType.DEPOSIT, BASE.plusMinutes(minute)));
+        }
+
+        // then
+        var minutes = rollups.find(RollupPeriod.MINUTE, null, null);
+        assertThat(minutes).hasSize(retention);
+        assertThat(minutes.get(0).start()).isEqualTo(BASE.plusMinutes(10));
+        assertThat(rollups.find(RollupPeriod.DAY, null, null))
+                .extracting(TransactionRollup::count).containsExactly(14 * 60L, 24 * 60L, retention + 10 - 38 * 60L);
+    }
+
+    private static Transaction transaction(String amount, TransactionType type, LocalDateTime timestamp) {
+        return new Transaction(UUID.randomUUID().toString(), Money.of(new BigDecimal(amount)), type, timestamp);
+    }
+
+    private static TransactionRollup rollup(LocalDateTime start, TransactionType type, long count, String total,
+                                            String min, String max) {
+        return new TransactionRollup(start, type, count, Money.of(new BigDecimal(total)), Money.of(new BigDecimal(min)),
+                Money.of(new BigDecimal(max)));
+    }
+}
@@ -0,0 +1,121 @@
+package com.wn.tiny.ledger.infrastructure.repository;
+
+import com.wn.tiny.ledger.domain.InvalidTransactionException;
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("TransactionSequencer Tests")
+class TransactionSequencerTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final String ACCOUNT = "account-1";
+
+    private final AccountRepository repository = new AccountRepository();
+    private final TransactionSequencer sequencer = new TransactionSequencer(repository, 64);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        sequencer.close();
+    }
+
+    @Test
+    @DisplayName("should record through the writer thread and read the result back")
+    void addTransaction_thenRead_seesTheTransaction() {
+        // given
+        var transaction = new Transaction(idGenerator, Money.of(BigDecimal.TEN), TransactionType.DEPOSIT);
+
+        // when
+        sequencer.addTransaction(ACCOUNT, transaction, balance -> true);
+
+        // then
+        assertThat(sequencer.getBalance(ACCOUNT).toBigDecimal()).isEqualByComparingTo("10");
+        assertThat(sequencer.getTransactionHistory(ACCOUNT)).containsExactly(transaction);
+        assertThat(sequencer.findTransaction(ACCOUNT, transaction.getId())).contains(transaction);
+    }
+
+    @Test
+    @DisplayName("should hand a rejected write back to the caller without changing the state")
+    void addTransaction_whenRejected_throwsOnTheCallerThread() {
+        var withdrawal = new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.WITHDRAWAL);
+
+        assertThatThrownBy(() -> sequencer.addTransaction(ACCOUNT, withdrawal, balance -> balance >= 100))
+                .isInstanceOf(InvalidTransactionException.class)
+                .hasMessage("Insufficient funds for withdrawal");
+        assertThat(sequencer.getBalance(ACCOUNT)).isEqualTo(Money.ZERO);
+        assertThat(sequencer.getTransactionHistory(ACCOUNT)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should keep balance and history in agreement under concurrent writers")
+    void addTransaction_concurrently_balanceMatchesHistory() throws InterruptedException {
+        // given
+        int threads = 16;
+        int perThread = 2_000;
+        var rejected = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                var random = ThreadLocalRandom.current();
+                for (int i = 0; i < perThread; i++) {
+                    var amount = Money.of(BigDecimal.valueOf(random.nextInt(1, 100)));
+                    var type = random.nextBoolean() ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL;
+                    try {
+                        sequencer.addTransaction(ACCOUNT, new Transaction(idGenerator, amount, type),
+                                balance -> type == TransactionType.DEPOSIT || balance >= amount.minorUnits());
+                    } catch (InvalidTransactionException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+
+        // then
+        var history = sequencer.getTransactionHistory(ACCOUNT);
+        assertThat(history).hasSize(threads * perThread - rejected.get());
+        long running = 0;
+        for (var transaction : history) {
+            running += transaction.getBalanceDelta();
+            assertThat(running).isNotNegative();
+        }
+        assertThat(sequencer.getBalance(ACCOUNT).minorUnits()).isEqualTo(running);
+    }
+
+    @Test
+    @DisplayName("should refuse writes once closed")
+    void addTransaction_afterClose_shouldThrow() throws InterruptedException {
+        sequencer.addTransactions(ACCOUNT, List.of(new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT)),
+                balance -> true);
+        sequencer.close();
+
+        assertThatThrownBy(() -> sequencer.addTransaction(ACCOUNT,
+                new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT), balance -> true))
+                .isInstanceOf(LedgerStorageException.class);
+        assertThat(sequencer.getTransactionHistory(ACCOUNT)).hasSize(1);
+    }
+}
@@ -0,0 +1,157 @@
+package com.wn.tiny.ledger.infrastructure.repository.replication;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import com.wn.tiny.ledger.infrastructure.repository.TransactionJournal;
+import com.wn.tiny.ledger.infrastructure.repository.wal.DurabilityMode;
+import com.wn.tiny.ledger.infrastructure.repository.wal.WriteAheadLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Replication Tests")
+class ReplicationTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should load a snapshot of the leader, then apply every record written concurrently after it")
+    void follower_snapshotThenConcurrentWrites_holdsTheStateOfTheLeader() throws Exception {
+        // given, a leader with history before the follower connects
+        var leader = new ReplicationLeader(TransactionJournal.NONE, 0, 10_000);
+        var leaderRepository = new AccountRepository(leader);
+        leader.start(leaderRepository, 0);
+        deposit(leaderRepository, "acc-1", "100");
+        deposit(leaderRepository, "acc-2", "50");
+        Set<String> notified = ConcurrentHashMap.newKeySet();
+        var followerRepository = new AccountRepository();
+        var follower = new ReplicationFollower(followerRepository, "localhost", leader.getPort(), notified::add);
+
+        // when
+        follower.start();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            final var accountId = "acc-" + (thread % 3 + 1);
+            executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    deposit(leaderRepository, accountId, "1.25");
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // then
+        assertThat(follower.awaitSequence(leader.lastSequence(), TIMEOUT)).isTrue();
+        assertThat(leader.lastSequence()).isEqualTo(2002);
+        assertThat(follower.isSynced()).isTrue();
+        assertThat(follower.getAppliedSequence()).isEqualTo(2002);
+        for (var accountId : List.of("acc-1", "acc-2", "acc-3")) {
+            assertThat(followerRepository.getBalance(accountId)).isEqualTo(leaderRepository.getBalance(accountId));
+            assertThat(followerRepository.getTransactionHistory(accountId))
+                    .extracting(Transaction::getId)
+                    .containsExactlyElementsOf(leaderRepository.getTransactionHistory(accountId).stream()
+                            .map(Transaction::getId).toList());
+            assertThat(followerRepository.getJournalTicket(accountId))
+                    .isEqualTo(leaderRepository.getJournalTicket(accountId));
+        }
+        assertThat(notified).containsExactlyInAnyOrder("acc-1", "acc-2", "acc-3");
+        assertThat(leader.getFollowerCount()).isEqualTo(1);
+
+        follower.close();
+        leader.close();
+    }
+
+    @Test
+    @DisplayName("should start over from a snapshot of the new leader when the leader restarts")
+    void follower_leaderRestarts_startsOverFromNewSnapshot() throws Exception {
+        // given, a synced follower
+        var leader = new ReplicationLeader(TransactionJournal.NONE, 0, 100);
+        var leaderRepository = new AccountRepository(leader);
+        leader.start(leaderRepository, 0);
+        final int port = leader.getPort();
+        deposit(leaderRepository, "acc-1", "100");
+        deposit(leaderRepository, "acc-1", "100");
+        var followerRepository = new AccountRepository();
+        var follower = new ReplicationFollower(followerRepository, "localhost", port, accountId -> {
+        });
+        follower.start();
+        assertThat(follower.awaitSequence(2, TIMEOUT)).isTrue();
+
+        // when, the leader comes back on the same port with another state, and numbering from the start again
+        leader.close();
+        var restarted = new ReplicationLeader(TransactionJournal.NONE, port, 100);
+        var restartedRepository = new AccountRepository(restarted);
+        restarted.start(restartedRepository, 0);
+        deposit(restartedRepository, "acc-2", "30");
+
+        // then
+        var deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (followerRepository.getJournalTicket("acc-2") != 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(follower.awaitSequence(1, TIMEOUT)).isTrue();
+        assertThat(followerRepository.getBalance("acc-2")).isEqualTo(Money.of(new BigDecimal("30")));
+        assertThat(followerRepository.getAccountCount()).isEqualTo(1);
+        assertThat(follower.getAppliedSequence()).isEqualTo(1);
+
+        follower.close();
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("should number records with the write-ahead log sequence and report the lag of a follower")
+    void leader_overWriteAheadLog_usesItsSequenceNumbers() throws Exception {
+        // given
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, Duration.ofMillis(5))) {
+            wal.recover(0, (sequence, accountId, transactions) -> {
+            });
+            var leader = new ReplicationLeader(wal, 0, 100);
+            var leaderRepository = new AccountRepository(leader);
+            leader.start(leaderRepository, wal.lastSequence());
+            var follower = new ReplicationFollower(new AccountRepository(), "localhost", leader.getPort(),
+                    accountId -> {
+                    });
+
+            // when
+            deposit(leaderRepository, "acc-1", "10");
+            deposit(leaderRepository, "acc-1", "10");
+            follower.start();
+
+            // then
+            assertThat(leaderRepository.getJournalTicket("acc-1")).isEqualTo(wal.lastSequence()).isEqualTo(2);
+            assertThat(follower.awaitSequence(2, TIMEOUT)).isTrue();
+            assertThat(follower.awaitSequence(3, Duration.ofMillis(50))).isFalse();
+            assertThat(follower.getLag()).isZero();
+            assertThat(follower.getStaleness()).isLessThan(TIMEOUT);
+
+            follower.close();
+            leader.close();
+        }
+    }
+
+    private void deposit(AccountRepository repository, String accountId, String amount) {
+        repository.addTransaction(accountId,
+                new Transaction(idGenerator, Money.of(new BigDecimal(amount)), TransactionType.DEPOSIT), balance -> true);
+    }
+}
@@ -0,0 +1,148 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Snapshotter Tests")
+class SnapshotterTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final Duration FSYNC_INTERVAL = Duration.ofMillis(5);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should recover from the snapshot and only replay the log written after it")
+    void recover_afterSnapshot_replaysOnlyTheTail() throws IOException {
+        // given
+        Transaction first;
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            var store = new SnapshotStore(directory);
+            var repository = new AccountRepository(wal);
+            Snapshotter.recover(repository, wal, store);
+
+            first = deposit(repository, "acc-1", "100.50");
+            deposit(repository, "acc-2", "20");
+            assertThat(new Snapshotter(repository, wal, store).snapshot()).isEqualTo(2);
+            repository.addTransaction("acc-1",
+                    new Transaction(idGenerator, Money.of(new BigDecimal("0.50")), TransactionType.WITHDRAWAL), balance -> true);
+        }
+
+        // when
+        var recovered = new AccountRepository();
+        RecoveryReport report;
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            report = Snapshotter.recover(recovered, wal, new SnapshotStore(directory));
+        }
+
+        // then
+        assertThat(report.snapshotSequence()).isEqualTo(2);
+        assertThat(report.snapshotTransactions()).isEqualTo(2);
+        assertThat(report.replayedTransactions()).isEqualTo(1);
+        assertThat(recovered.getBalance("acc-1")).isEqualTo(Money.of(new BigDecimal("100")));
+        assertThat(recovered.getBalance("acc-2")).isEqualTo(Money.of(new BigDecimal("20")));
+        assertThat(recovered.getTransactionHistory("acc-1")).hasSize(2);
+        assertThat(recovered.findTransaction("acc-1", first.getId())).isPresent();
+        assertThat(recovered.getJournalTicket("acc-1")).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("should recover the exact state when snapshots run while transactions are recorded")
+    void snapshot_concurrentWithWriters_recoversEveryTransaction() throws Exception {
+        // given
+        int threads = 4;
+        int perThread = 500;
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL, 4096)) {
+            var store = new SnapshotStore(directory);
+            var repository = new AccountRepository(wal);
+            Snapshotter.recover(repository, wal, store);
+            var snapshotter = new Snapshotter(repository, wal, store);
+
+            var start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                var accountId = "acc-" + (t % 2);
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        deposit(repository, accountId, "1");
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            while (!executor.awaitTermination(5, TimeUnit.MILLISECONDS)) {
+                snapshotter.snapshot();
+            }
+            assertThat(executor.isTerminated()).isTrue();
+        }
+
+        // when
+        var recovered = new AccountRepository();
+        RecoveryReport report;
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            report = Snapshotter.recover(recovered, wal, new SnapshotStore(directory));
+        }
+
+        // then
+        var expected = new BigDecimal(threads / 2 * perThread);
+        assertThat(recovered.getBalance("acc-0").toBigDecimal()).isEqualByComparingTo(expected);
+        assertThat(recovered.getBalance("acc-1").toBigDecimal()).isEqualByComparingTo(expected);
+        assertThat(recovered.getTransactionHistory("acc-0")).hasSize(threads / 2 * perThread);
+        assertThat(recovered.getTransactionHistory("acc-1")).hasSize(threads / 2 * perThread);
+        assertThat(report.snapshotTransactions() + report.replayedTransactions()).isEqualTo((long) threads * perThread);
+    }
+
+    @Test
+    @DisplayName("should refuse a corrupted snapshot")
+    void recover_withCorruptedSnapshot_shouldThrow() throws IOException {
+        // given
+        Path file;
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            var store = new SnapshotStore(directory);
+            var repository = new AccountRepository(wal);
+            Snapshotter.recover(repository, wal, store);
+            deposit(repository, "acc-1", "10");
+            new Snapshotter(repository, wal, store).snapshot();
+            try (var files = Files.list(directory)) {
+                file = files.filter(path -> path.toString().endsWith(".snap")).findFirst().orElseThrow();
+            }
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 12] ^= 1;
+        Files.write(file, bytes);
+
+        // when / then
+        assertThatThrownBy(() -> new SnapshotStore(directory).readLatest())
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("is corrupted");
+    }
+
+    private Transaction deposit(AccountRepository repository, String accountId, String amount) {
+        var transaction = new Transaction(idGenerator, Money.of(new BigDecimal(amount)), TransactionType.DEPOSIT);
+        repository.addTransaction(accountId, transaction, balance -> true);
+        return transaction;
+    }
+}
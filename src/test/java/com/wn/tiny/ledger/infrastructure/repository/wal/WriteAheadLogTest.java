@@ -0,0 +1,269 @@
+package com.wn.tiny.ledger.infrastructure.repository.wal;
+
+import com.wn.tiny.ledger.domain.Money;
+import com.wn.tiny.ledger.domain.SnowflakeIdGenerator;
+import com.wn.tiny.ledger.domain.Transaction;
+import com.wn.tiny.ledger.domain.TransactionType;
+import com.wn.tiny.ledger.infrastructure.repository.AccountRepository;
+import com.wn.tiny.ledger.infrastructure.repository.LedgerStorageException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("WriteAheadLog Tests")
+class WriteAheadLogTest {
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    private static final Duration FSYNC_INTERVAL = Duration.ofMillis(5);
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(DurabilityMode.class)
+    @DisplayName("should read back every recorded transaction after a restart")
+    void recover_afterRestart_restoresTransactions(DurabilityMode durabilityMode) throws IOException {
+        // given
+                var deposit = new Transaction(idGenerator, Money.of(new BigDecimal("100.25")), TransactionType.DEPOSIT);
+        var withdrawal = new Transaction(idGenerator, Money.of(new BigDecimal("40")), TransactionType.WITHDRAWAL);
+        try (var wal = WriteAheadLog.open(directory, durabilityMode, FSYNC_INTERVAL)) {
+            assertThat(wal.recover(0, (sequence, accountId, recorded) -> { })).isZero();
+            wal.awaitDurable(wal.append("acc-1", deposit));
+            wal.awaitDurable(wal.append("acc-2", withdrawal));
+        }
+
+        // when
+        List<String> accounts = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+        try (var wal = WriteAheadLog.open(directory, durabilityMode, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> {
+                accounts.add(accountId);
+                transactions.addAll(recorded);
+            });
+        }
+
+        // then
+        assertThat(accounts).containsExactly("acc-1", "acc-2");
+        assertThat(transactions).hasSize(2);
+        assertThat(transactions.get(0).getId()).isEqualTo(deposit.getId());
+        assertThat(transactions.get(0).getAmount()).isEqualTo(deposit.getAmount());
+        assertThat(transactions.get(0).getType()).isEqualTo(TransactionType.DEPOSIT);
+        assertThat(transactions.get(0).getTimestamp()).isEqualTo(deposit.getTimestamp());
+        assertThat(transactions.get(1).getId()).isEqualTo(withdrawal.getId());
+        assertThat(transactions.get(1).getType()).isEqualTo(TransactionType.WITHDRAWAL);
+    }
+
+    @Test
+    @DisplayName("should cut off a torn record at the end of the log")
+    void recover_withTornTail_truncatesIt() throws IOException {
+        // given
+                try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> { });
+            wal.awaitDurable(wal.append("acc-1", new Transaction(idGenerator, Money.of(BigDecimal.TEN), TransactionType.DEPOSIT)));
+            wal.awaitDurable(wal.append("acc-1", new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT)));
+        }
+        long validSize;
+        try (var channel = FileChannel.open(directory.resolve(segment(1)), StandardOpenOption.WRITE)) {
+            validSize = channel.size();
+            channel.truncate(validSize - 3);
+        }
+
+        // when
+        List<Transaction> transactions = new ArrayList<>();
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> transactions.addAll(recorded));
+            wal.awaitDurable(wal.append("acc-1", new Transaction(idGenerator, Money.of(new BigDecimal("2")), TransactionType.DEPOSIT)));
+        }
+
+        // then
+        transactions.clear();
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> transactions.addAll(recorded));
+        }
+        assertThat(transactions).extracting(Transaction::getAmount)
+                .containsExactly(Money.of(BigDecimal.TEN), Money.of(new BigDecimal("2")));
+    }
+
+    @Test
+    @DisplayName("should recover the transactions journaled together all at once or not at all")
+    void recover_withTornBatch_dropsTheWholeBatch() throws IOException {
+        // given
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> { });
+            wal.awaitDurable(wal.append("acc-1", List.of(deposit(BigDecimal.ONE), deposit(BigDecimal.TEN))));
+            wal.awaitDurable(wal.append("acc-1", List.of(deposit(new BigDecimal("2")), deposit(new BigDecimal("3")))));
+        }
+        try (var channel = FileChannel.open(directory.resolve(segment(1)), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        // when
+        List<Long> sequences = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> {
+                sequences.add(sequence);
+                transactions.addAll(recorded);
+            });
+        }
+
+        // then
+        assertThat(sequences).containsExactly(1L);
+        assertThat(transactions).extracting(Transaction::getAmount)
+                .containsExactly(Money.of(BigDecimal.ONE), Money.of(BigDecimal.TEN));
+    }
+
+    @Test
+    @DisplayName("should refuse a file that is not a write-ahead log")
+    void recover_withForeignFile_shouldThrow() throws IOException {
+        Files.writeString(directory.resolve("wal-00000000000000000001.log"), "not a log at all");
+
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            assertThatThrownBy(() -> wal.recover(0, (sequence, accountId, recorded) -> { }))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("is not a ledger write-ahead log");
+        }
+    }
+
+    @Test
+    @DisplayName("should keep numbering records across segments and drop the covered ones")
+    void rollover_thenDeleteCoveredSegments_keepsTheTail() throws IOException {
+        // given
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> { });
+            wal.awaitDurable(wal.append("acc-1", deposit(BigDecimal.ONE)));
+            wal.awaitDurable(wal.append("acc-1", deposit(BigDecimal.TEN)));
+            wal.rollover();
+            wal.awaitDurable(wal.append("acc-1", deposit(new BigDecimal("3"))));
+
+            // when
+            assertThat(wal.deleteSegmentsCoveredBy(1)).isZero();
+            assertThat(wal.deleteSegmentsCoveredBy(2)).isEqualTo(1);
+            assertThat(wal.deleteSegmentsCoveredBy(3)).isZero();
+        }
+
+        // then
+        assertThat(Files.exists(directory.resolve(segment(1)))).isFalse();
+        assertThat(Files.exists(directory.resolve(segment(3)))).isTrue();
+        List<Long> sequences = new ArrayList<>();
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            assertThat(wal.recover(2, (sequence, accountId, recorded) -> sequences.add(sequence))).isEqualTo(1);
+            assertThat(wal.append("acc-1", deposit(BigDecimal.ONE))).isEqualTo(4);
+        }
+        assertThat(sequences).containsExactly(3L);
+    }
+
+    @Test
+    @DisplayName("should keep writing to an empty segment when asked to roll it over")
+    void rollover_withEmptySegment_keepsIt() throws IOException {
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> { });
+            wal.rollover();
+            wal.awaitDurable(wal.append("acc-1", deposit(BigDecimal.ONE)));
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> sequences.add(sequence));
+        }
+        assertThat(sequences).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("should refuse to recover when records before the covered sequence are missing")
+    void recover_withMissingSegment_shouldThrow() throws IOException {
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            wal.recover(0, (sequence, accountId, recorded) -> { });
+            wal.awaitDurable(wal.append("acc-1", deposit(BigDecimal.ONE)));
+            wal.rollover();
+            wal.awaitDurable(wal.append("acc-1", deposit(BigDecimal.ONE)));
+        }
+        Files.delete(directory.resolve(segment(1)));
+
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            assertThatThrownBy(() -> wal.recover(0, (sequence, accountId, recorded) -> { }))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("are missing");
+        }
+    }
+
+    @Test
+    @DisplayName("should reject appends once closed")
+    void append_afterClose_shouldThrow() throws IOException {
+        var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL);
+        wal.recover(0, (sequence, accountId, recorded) -> { });
+        wal.close();
+
+        assertThatThrownBy(() -> wal.append("acc-1", new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT)))
+                .isInstanceOf(LedgerStorageException.class);
+    }
+
+    @Test
+    @DisplayName("should restore the repository state of concurrent writers after a restart")
+    void accountRepository_withWal_recoversConcurrentWrites() throws Exception {
+        // given
+                int threads = 8;
+        int perThread = 200;
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            var repository = new AccountRepository(wal);
+            wal.recover(0, repository::restore);
+
+            var start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                var accountId = "acc-" + (t % 2);
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        repository.addTransaction(accountId,
+                                new Transaction(idGenerator, Money.of(BigDecimal.ONE), TransactionType.DEPOSIT), balance -> true);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // when
+        var recovered = new AccountRepository();
+        try (var wal = WriteAheadLog.open(directory, DurabilityMode.BATCH, FSYNC_INTERVAL)) {
+            assertThat(wal.recover(0, recovered::restore)).isEqualTo((long) threads * perThread);
+        }
+
+        // then
+        var expected = new BigDecimal(threads / 2 * perThread);
+        assertThat(recovered.getBalance("acc-0").toBigDecimal()).isEqualByComparingTo(expected);
+        assertThat(recovered.getBalance("acc-1").toBigDecimal()).isEqualByComparingTo(expected);
+        assertThat(recovered.getTransactionHistory("acc-0")).hasSize(threads / 2 * perThread);
+    }
+
+    private Transaction deposit(BigDecimal amount) {
+        return new Transaction(idGenerator, Money.of(amount), TransactionType.DEPOSIT);
+    }
+
+    private static String segment(long firstSequence) {
+        return String.format("wal-%020d.log", firstSequence);
+    }
+}
@@ -0,0 +1,56 @@
+package com.wn.tiny.ledger.loadtest;
+
+import com.wn.tiny.ledger.Main;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Boots the whole application on a random port and puts it under HTTP load, then checks that every account adds up.
+ * <p>
+ * Only runs with the {@code load-test} Maven profile: {@code mvn -Pload-test test}. The load is tuned with the
+ * {@code loadtest.clients}, {@code loadtest.accounts}, {@code loadtest.rate} (requests per second, 0 for as many as
+ * possible), {@code loadtest.warmup-seconds} and {@code loadtest.seconds} system properties.
+ */
+@Tag("load")
+@DisplayName("Ledger Load Tests")
+class LedgerLoadTest {
+
+    @TempDir
+    Path dataDirectory;
+
+    @ParameterizedTest(name = "{0} profile")
+    @ValueSource(strings = {"local", "prod"})
+    @DisplayName("should sustain mixed traffic and keep every balance equal to the sum of its history")
+    void mixedTraffic_keepsBalancesConsistent(String profile) throws Exception {
+        // given
+        var settings = LoadGenerator.Settings.fromSystemProperties();
+        try (var context = new SpringApplicationBuilder(Main.class)
+                .profiles(profile)
+                // command line arguments, the profile files would take precedence over default properties
+                .run("--server.port=0",
+                        "--ledger.wal.directory=" + dataDirectory,
+                        "--logging.level.com.wn.tiny.ledger.infrastructure.config.AppExceptionHandler=OFF")) {
+            var baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/api";
+            var cookie = "prod".equals(profile) ? LoadGenerator.login(baseUrl) : null;
+            var generator = new LoadGenerator(baseUrl, cookie, settings);
+
+            // when
+            var report = generator.run();
+            System.out.printf("%nLoad test on the %s profile, %s%n%s%n", profile, settings, report.format());
+
+            // then
+            assertThat(report.succeeded()).isPositive();
+            assertThat(report.errors()).isZero();
+            assertThat(generator.checkInvariants()).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.wn.tiny.ledger.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives mixed ledger traffic against a running server from many concurrent clients and checks the ledger afterwards.
+ * <p>
+ * Every client is a thread with its own share of the target rate. Requests are sent on a fixed schedule, and latency is
+ * measured from the time a request was due, not from the time it was sent. That way a slow server is not hidden by
+ * clients that back off.
+ * Withdrawals rejected for insufficient funds are expected and counted apart from errors.
+ */
+class LoadGenerator {
+
+    enum Operation {DEPOSIT, WITHDRAWAL, HISTORY, BALANCE}
+
+    /**
+     * @param rate total requests per second of all clients together, 0 sends them back to back
+     */
+    record Settings(int clients, int accounts, double rate, Duration warmup, Duration duration) {
+
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    Integer.getInteger("loadtest.clients", 16),
+                    Integer.getInteger("loadtest.accounts", 8),
+                    Double.parseDouble(System.getProperty("loadtest.rate", "200")),
+                    Duration.ofSeconds(Integer.getInteger("loadtest.warmup-seconds", 10)),
+                    Duration.ofSeconds(Integer.getInteger("loadtest.seconds", 20)));
+        }
+    }
+
+    private static final String ACCOUNT_PREFIX = "load-";
+    private static final int HISTORY_PAGE_SIZE = 1000;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final String cookie;
+    private final Settings settings;
+    /* Balance of each account according to the writes the server acknowledged, in cents */
+    private final AtomicLongArray acknowledgedBalances;
+    private final AtomicLongArray acknowledgedWrites;
+
+    LoadGenerator(String baseUrl, String cookie, Settings settings) {
+        this.baseUrl = baseUrl;
+        this.cookie = cookie;
+        this.settings = settings;
+        this.acknowledgedBalances = new AtomicLongArray(settings.accounts());
+        this.acknowledgedWrites = new AtomicLongArray(settings.accounts());
+    }
+
+    /**
+     * Logs in and returns the cookie to send with every request. The cookie is marked secure, so it is read from the
+     * response instead of being left to a cookie manager that would not send it over plain HTTP.
+     */
+    static String login(String baseUrl) throws IOException, InterruptedException {
+        var response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(baseUrl + "/v1/auth"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"load\",\"password\":\"test\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.headers().firstValue("Set-Cookie")
+                .map(header -> header.substring(0, header.indexOf(';')))
+                .orElseThrow(() -> new IllegalStateException("Login returned no cookie, status " + response.statusCode()));
+    }
+
+    Report run() throws InterruptedException {
+        final long start = System.nanoTime();
+        final long measureFrom = start + settings.warmup().toNanos();
+        final long end = measureFrom + settings.duration().toNanos();
+        // each client sends one request every interval, clients are spread evenly over the first interval
+        final long interval = settings.rate() <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) * settings.clients() / settings.rate());
+
+        final List<Client> clients = new ArrayList<>(settings.clients());
+        final List<Thread> threads = new ArrayList<>(settings.clients());
+        for (int i = 0; i < settings.clients(); i++) {
+            var client = new Client(start + interval * i / settings.clients(), interval, measureFrom, end);
+            clients.add(client);
+            var thread = new Thread(client, "load-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        return new Report(settings.duration(), clients);
+    }
+
+    /**
+     * Reads back every account and compares its balance with the sum of its history and with the writes the server
+     * acknowledged during the run.
+     *
+     * @return one line per account that does not add up, empty when the ledger is consistent
+     */
+    List<String> checkInvariants() throws IOException, InterruptedException {
+        final List<String> violations = new ArrayList<>();
+        for (int account = 0; account < settings.accounts(); account++) {
+            final String accountId = ACCOUNT_PREFIX + account;
+            final long balance = cents(get("/v1/ledger/accounts/" + accountId + "/balance").body().get("balance"));
+
+            long historySum = 0;
+            long historySize = 0;
+            String cursor = null;
+            do {
+                var page = get("/v1/ledger/accounts/" + accountId + "/history?limit=" + HISTORY_PAGE_SIZE
+                        + (cursor == null ? "" : "&cursor=" + cursor));
+                for (var transaction : page.body()) {
+                    final long amount = cents(transaction.get("amount"));
+                    historySum += "DEPOSIT".equals(transaction.get("type").asText()) ? amount : -amount;
+                    historySize++;
+                }
+                cursor = page.nextCursor();
+            } while (cursor != null);
+
+            if (balance != historySum) {
+                violations.add(accountId + ": balance " + balance + " differs from the sum of its history " + historySum);
+            }
+            if (balance != acknowledgedBalances.get(account)) {
+                violations.add(accountId + ": balance " + balance + " differs from the acknowledged writes "
+                        + acknowledgedBalances.get(account));
+            }
+            if (historySize != acknowledgedWrites.get(account)) {
+                violations.add(accountId + ": history has " + historySize + " transactions, "
+                        + acknowledgedWrites.get(account) + " writes were acknowledged");
+            }
+        }
+        return violations;
+    }
+
+    private Page get(String path) throws IOException, InterruptedException {
+        var response = httpClient.send(request(path).GET().build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + path + " returned " + response.statusCode());
+        }
+        return new Page(objectMapper.readTree(response.body()), response.headers().firstValue("X-Next-Cursor").orElse(null));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        var builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30));
+        if (cookie != null) {
+            builder.header("Cookie", cookie);
+        }
+        return builder;
+    }
+
+    private static long cents(JsonNode amount) {
+        return amount.decimalValue().movePointRight(2).longValueExact();
+    }
+
+    private record Page(JsonNode body, String nextCursor) {
+    }
+
+    private final class Client implements Runnable {
+
+        private final long interval;
+        private final long measureFrom;
+        private final long end;
+        private final Map<Operation, LatencyRecorder> latencies = new EnumMap<>(Operation.class);
+        private long due;
+        private long rejected;
+        private long errors;
+
+        Client(long firstDue, long interval, long measureFrom, long end) {
+            this.due = firstDue;
+            this.interval = interval;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            for (var operation : Operation.values()) {
+                latencies.put(operation, new LatencyRecorder());
+            }
+        }
+
+        @Override
+        public void run() {
+            final var random = ThreadLocalRandom.current();
+            while (true) {
+                final long now = System.nanoTime();
+                if (interval == 0) {
+                    due = now;
+                } else if (due > now) {
+                    LockSupport.parkNanos(due - now);
+                }
+                if (due >= end) {
+                    return;
+                }
+
+                final int account = random.nextInt(settings.accounts());
+                final int roll = random.nextInt(100);
+                final var operation = roll < 45 ? Operation.DEPOSIT : roll < 70 ? Operation.WITHDRAWAL
+                        : roll < 85 ? Operation.HISTORY : Operation.BALANCE;
+                final long amount = 1 + random.nextInt(10_000);
+
+                final int status = send(operation, account, amount);
+                final long latency = System.nanoTime() - due;
+
+                if (status == 201) {
+                    acknowledgedBalances.addAndGet(account, operation == Operation.DEPOSIT ? amount : -amount);
+                    acknowledgedWrites.incrementAndGet(account);
+                }
+                if (due >= measureFrom) {
+                    if (status == 400 && operation == Operation.WITHDRAWAL) {
+                        rejected++;
+                    } else if (status != 200 && status != 201) {
+                        errors++;
+                    } else {
+                        latencies.get(operation).record(latency);
+                    }
+                }
+                due += interval;
+            }
+        }
+
+        private int send(Operation operation, int account, long amount) {
+            final String path = "/v1/ledger/accounts/" + ACCOUNT_PREFIX + account;
+            final var request = switch (operation) {
+                case DEPOSIT, WITHDRAWAL -> request(path + "/transactions")
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"amount\":" + BigDecimal.valueOf(amount, 2)
+                                + ",\"type\":\"" + operation + "\"}"));
+                case HISTORY -> request(path + "/history?limit=20").GET();
+                case BALANCE -> request(path + "/balance").GET();
+            };
+            try {
+                return httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                return -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Latencies of the requests that succeeded during the measured part of the run, merged from every client.
+     */
+    static final class Report {
+
+        private final Duration duration;
+        private final Map<Operation, long[]> latencies = new EnumMap<>(Operation.class);
+        private final long rejected;
+        private final long errors;
+
+        private Report(Duration duration, List<Client> clients) {
+            this.duration = duration;
+            for (var operation : Operation.values()) {
+                latencies.put(operation, merge(clients.stream()
+                        .map(client -> client.latencies.get(operation).values()).toList()));
+            }
+            this.rejected = clients.stream().mapToLong(client -> client.rejected).sum();
+            this.errors = clients.stream().mapToLong(client -> client.errors).sum();
+        }
+
+        long errors() {
+            return errors;
+        }
+
+        long succeeded() {
+            return latencies.values().stream().mapToLong(values -> values.length).sum();
+        }
+
+        String format() {
+            final var report = new StringBuilder();
+            report.append(String.format(Locale.ROOT, "%-10s %10s %10s %9s %9s %9s %9s%n",
+                    "operation", "requests", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            latencies.forEach((operation, values) -> report.append(line(operation.name(), values)));
+            report.append(line("all", merge(latencies.values())));
+            report.append(String.format(Locale.ROOT, "rejected withdrawals: %d, errors: %d%n", rejected, errors));
+            return report.toString();
+        }
+
+        private String line(String name, long[] values) {
+            return String.format(Locale.ROOT, "%-10s %10d %10.1f %9.2f %9.2f %9.2f %9.2f%n", name, values.length,
+                    values.length / (duration.toNanos() / 1e9),
+                    percentile(values, 0.50), percentile(values, 0.90), percentile(values, 0.99), percentile(values, 1));
+        }
+
+        private static long[] merge(Collection<long[]> parts) {
+            final long[] merged = new long[parts.stream().mapToInt(part -> part.length).sum()];
+            int offset = 0;
+            for (var part : parts) {
+                System.arraycopy(part, 0, merged, offset, part.length);
+                offset += part.length;
+            }
+            Arrays.sort(merged);
+            return merged;
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    private static final class LatencyRecorder {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void record(long latency) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = latency;
+        }
+
+        long[] values() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}